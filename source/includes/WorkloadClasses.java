@@ -0,0 +1,310 @@
+package org.example;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import org.bson.Document;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gte;
+
+public class WorkloadClasses {
+
+    public static void main(String[] args) {
+        // start-use-workload-router
+        WorkloadRouter router = new WorkloadRouter("interactive", Arrays.asList(
+                WorkloadClass.builder("interactive")
+                        .readPreference(ReadPreference.primaryPreferred())
+                        .readConcern(ReadConcern.LOCAL)
+                        .writeConcern(WriteConcern.MAJORITY)
+                        .timeout(Duration.ofMillis(250))
+                        .maxConcurrentOperations(60)
+                        .maxWaitingOperations(200)
+                        .build(),
+                WorkloadClass.builder("batch")
+                        .writeConcern(WriteConcern.W1)
+                        .timeout(Duration.ofSeconds(30))
+                        .maxConcurrentOperations(30)
+                        .build(),
+                WorkloadClass.builder("analytics")
+                        .readPreference(ReadPreference.secondary())
+                        .readConcern(ReadConcern.MAJORITY)
+                        .timeout(Duration.ofMinutes(5))
+                        .maxConcurrentOperations(10)
+                        .build()));
+
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString("<your connection string>"))
+                .applyToConnectionPoolSettings(builder -> builder.maxSize(router.getTotalConcurrentOperations()))
+                .build();
+
+        try (MongoClient mongoClient = MongoClients.create(settings)) {
+            MongoCollection<Document> restaurants = mongoClient
+                    .getDatabase("sample_restaurants")
+                    .getCollection("restaurants");
+
+            // A batch job that can't use more than 30 connections
+            Mono<Long> batch = Flux.range(0, 100_000)
+                    .flatMap(i -> router.run(restaurants,
+                            collection -> collection.insertOne(new Document("batch", i))), 256)
+                    .count()
+                    .contextWrite(WorkloadRouter.workload("batch"));
+
+            // Interactive reads, which use the default workload class
+            Mono<Long> interactive = Flux.range(0, 1_000)
+                    .flatMap(i -> router.run(restaurants,
+                            collection -> collection.find(eq("restaurant_id", "40356018")).first()), 16)
+                    .count();
+
+            // An analytics query that reads from a secondary
+            Mono<Long> analytics = router.run(restaurants,
+                            collection -> collection.find(gte("grades.score", 10)))
+                    .count()
+                    .contextWrite(WorkloadRouter.workload("analytics"));
+
+            Mono.when(batch, interactive, analytics).block();
+            router.getClasses().forEach(workloadClass -> System.out.println(workloadClass));
+        }
+        // end-use-workload-router
+    }
+}
+
+// start-workload-class
+// Settings and a connection limit for one class of operations
+final class WorkloadClass {
+    private final String name;
+    private final ReadPreference readPreference;
+    private final ReadConcern readConcern;
+    private final WriteConcern writeConcern;
+    private final Duration timeout;
+    private final int maxConcurrentOperations;
+    private final int maxWaitingOperations;
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private int running;
+    private long rejected;
+
+    private WorkloadClass(Builder builder) {
+        this.name = builder.name;
+        this.readPreference = builder.readPreference;
+        this.readConcern = builder.readConcern;
+        this.writeConcern = builder.writeConcern;
+        this.timeout = builder.timeout;
+        this.maxConcurrentOperations = builder.maxConcurrentOperations;
+        this.maxWaitingOperations = builder.maxWaitingOperations;
+    }
+
+    static Builder builder(String name) {
+        return new Builder(name);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getMaxConcurrentOperations() {
+        return maxConcurrentOperations;
+    }
+
+    // Applies this class's settings to a collection. Unset settings keep the collection's values.
+    <D> MongoCollection<D> configure(MongoCollection<D> collection) {
+        MongoCollection<D> result = collection;
+        if (readPreference != null) {
+            result = result.withReadPreference(readPreference);
+        }
+        if (readConcern != null) {
+            result = result.withReadConcern(readConcern);
+        }
+        if (writeConcern != null) {
+            result = result.withWriteConcern(writeConcern);
+        }
+        if (timeout != null) {
+            result = result.withTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        return result;
+    }
+
+    // Runs the work when fewer than maxConcurrentOperations operations of this class are running
+    <T> Flux<T> limit(Publisher<T> work) {
+        return Flux.defer(() -> {
+            AtomicBoolean granted = new AtomicBoolean();
+            return acquire(granted)
+                    .thenMany(work)
+                    .doFinally(signal -> {
+                        if (granted.getAndSet(false)) {
+                            release();
+                        }
+                    });
+        });
+    }
+
+    private Mono<Void> acquire(AtomicBoolean granted) {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink, granted);
+            synchronized (this) {
+                if (running < maxConcurrentOperations) {
+                    running++;
+                    granted.set(true);
+                } else if (waiters.size() >= maxWaitingOperations) {
+                    rejected++;
+                } else {
+                    waiters.add(waiter);
+                    sink.onCancel(() -> removeWaiter(waiter));
+                    return;
+                }
+            }
+            if (granted.get()) {
+                sink.success();
+            } else {
+                sink.error(new RejectedExecutionException("Too many waiting operations in workload class " + name));
+            }
+        });
+    }
+
+    private synchronized void removeWaiter(Waiter waiter) {
+        waiters.remove(waiter);
+    }
+
+    private void release() {
+        Waiter next;
+        synchronized (this) {
+            next = waiters.poll();
+            if (next == null) {
+                running--;
+                return;
+            }
+            // Passes the permit directly to the next waiter
+            next.granted.set(true);
+        }
+        next.sink.success();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s: running=%d/%d waiting=%d rejected=%d",
+                name, running, maxConcurrentOperations, waiters.size(), rejected);
+    }
+
+    private static final class Waiter {
+        final MonoSink<Void> sink;
+        final AtomicBoolean granted;
+
+        Waiter(MonoSink<Void> sink, AtomicBoolean granted) {
+            this.sink = sink;
+            this.granted = granted;
+        }
+    }
+
+    static final class Builder {
+        private final String name;
+        private ReadPreference readPreference;
+        private ReadConcern readConcern;
+        private WriteConcern writeConcern;
+        private Duration timeout;
+        private int maxConcurrentOperations = 10;
+        private int maxWaitingOperations = Integer.MAX_VALUE;
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        Builder readPreference(ReadPreference readPreference) {
+            this.readPreference = readPreference;
+            return this;
+        }
+
+        Builder readConcern(ReadConcern readConcern) {
+            this.readConcern = readConcern;
+            return this;
+        }
+
+        Builder writeConcern(WriteConcern writeConcern) {
+            this.writeConcern = writeConcern;
+            return this;
+        }
+
+        Builder timeout(Duration timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        Builder maxConcurrentOperations(int maxConcurrentOperations) {
+            this.maxConcurrentOperations = maxConcurrentOperations;
+            return this;
+        }
+
+        Builder maxWaitingOperations(int maxWaitingOperations) {
+            this.maxWaitingOperations = maxWaitingOperations;
+            return this;
+        }
+
+        WorkloadClass build() {
+            return new WorkloadClass(this);
+        }
+    }
+}
+// end-workload-class
+
+// start-workload-router-class
+// Runs each operation with the workload class named in the Reactor Context
+final class WorkloadRouter {
+    private static final String WORKLOAD_KEY = "workload";
+
+    private final String defaultClass;
+    private final Map<String, WorkloadClass> classes = new LinkedHashMap<>();
+
+    WorkloadRouter(String defaultClass, List<WorkloadClass> workloadClasses) {
+        workloadClasses.forEach(workloadClass -> classes.put(workloadClass.getName(), workloadClass));
+        if (!classes.containsKey(defaultClass)) {
+            throw new IllegalArgumentException("Unknown default workload class: " + defaultClass);
+        }
+        this.defaultClass = defaultClass;
+    }
+
+    // Tags the operations upstream of contextWrite() with a workload class
+    static Function<Context, Context> workload(String name) {
+        return context -> context.put(WORKLOAD_KEY, name);
+    }
+
+    <D, T> Flux<T> run(MongoCollection<D> collection, Function<MongoCollection<D>, Publisher<T>> operation) {
+        return Flux.deferContextual(context -> {
+            String name = context.getOrDefault(WORKLOAD_KEY, defaultClass);
+            WorkloadClass workloadClass = classes.get(name);
+            if (workloadClass == null) {
+                return Flux.error(new IllegalArgumentException("Unknown workload class: " + name));
+            }
+            return workloadClass.limit(Flux.defer(() -> operation.apply(workloadClass.configure(collection))));
+        });
+    }
+
+    // The connection pool size that lets every class reach its limit at the same time
+    int getTotalConcurrentOperations() {
+        return classes.values().stream().mapToInt(WorkloadClass::getMaxConcurrentOperations).sum();
+    }
+
+    Iterable<WorkloadClass> getClasses() {
+        return classes.values();
+    }
+}
+// end-workload-router-class
@@ -5,14 +5,21 @@ import com.mongodb.client.model.Projections;
 import com.mongodb.reactivestreams.client.*;
 import org.bson.Document;
 
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.bson.conversions.Bson;
 
 import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.search.SearchOperator;
+import com.mongodb.client.model.search.SearchOptions;
 
 import static com.mongodb.client.model.search.SearchPath.fieldPath;
 
@@ -49,6 +56,149 @@ public class SearchHelpers {
             publisher.subscribe(new SubscriberHelpers.PrintDocumentSubscriber());
             Mono.from(publisher).block();
             // end atlasHelperMethods
+
+            // start searchPagination
+            SearchPager pager = new SearchPager(movies, 20, 100, Duration.ofMinutes(5));
+
+            SearchOperator comedies = SearchOperator.compound()
+                    .filter(List.of(
+                            SearchOperator.in(fieldPath("genres"), List.of("Comedy")),
+                            SearchOperator.numberRange(fieldPath("year")).gtLt(1950, 2000)));
+            Bson titleFields = Projections.include("title", "year");
+
+            // Retrieves the first page and starts retrieving the second page
+            SearchPager.Page firstPage = pager.firstPage(comedies, titleFields).block();
+            firstPage.documents.forEach(System.out::println);
+
+            // Returns the prefetched page without waiting for another query
+            SearchPager.Page secondPage = pager.nextPage(comedies, titleFields, firstPage).block();
+            secondPage.documents.forEach(System.out::println);
+
+            // Returns the first page from the cache
+            SearchPager.Page previousPage = pager.previousPage(comedies, titleFields, secondPage).block();
+            // end searchPagination
+        }
+    }
+}
+
+// start searchPager
+class SearchPager {
+    // Sorts by score, then by _id so that results with the same score keep the same order
+    private static final Document SORT = new Document("score", new Document("$meta", "searchScore"))
+            .append("_id", 1);
+
+    private final MongoCollection<Document> collection;
+    private final int pageSize;
+    private final Duration maxAge;
+    private final Map<String, CachedPage> recentPages;
+
+    SearchPager(MongoCollection<Document> collection, int pageSize, int maxCachedPages, Duration maxAge) {
+        this.collection = collection;
+        this.pageSize = pageSize;
+        this.maxAge = maxAge;
+        // Keeps the most recently used pages, for all queries
+        this.recentPages = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPage> eldest) {
+                return size() > maxCachedPages || eldest.getValue().isExpired();
+            }
+        });
+    }
+
+    public Mono<Page> firstPage(SearchOperator operator, Bson projection) {
+        return withPrefetch(operator, projection, cachedPage(operator, projection, null, null));
+    }
+
+    public Mono<Page> nextPage(SearchOperator operator, Bson projection, Page current) {
+        return withPrefetch(operator, projection, afterPage(operator, projection, current));
+    }
+
+    public Mono<Page> previousPage(SearchOperator operator, Bson projection, Page current) {
+        return cachedPage(operator, projection, "searchBefore", current.firstToken);
+    }
+
+    // Starts retrieving the following page while the caller renders this one
+    private Mono<Page> withPrefetch(SearchOperator operator, Bson projection, Mono<Page> page) {
+        return page.doOnNext(current -> {
+            if (current.documents.size() == pageSize) {
+                afterPage(operator, projection, current).subscribe(next -> { }, error -> { });
+            }
+        });
+    }
+
+    private Mono<Page> afterPage(SearchOperator operator, Bson projection, Page current) {
+        return cachedPage(operator, projection, "searchAfter", current.lastToken)
+                // Lets previousPage() find the current page in the cache
+                .doOnNext(next -> recentPages.putIfAbsent(
+                        key(operator, projection, "searchBefore", next.firstToken),
+                        new CachedPage(Mono.just(current), maxAge)));
+    }
+
+    // Retrieves the page again if the cached page is older than maxAge, because the
+    // collection might have changed since then
+    private Mono<Page> cachedPage(SearchOperator operator, Bson projection, String direction, String token) {
+        return recentPages.compute(key(operator, projection, direction, token),
+                (k, cached) -> cached != null && !cached.isExpired() ? cached : new CachedPage(
+                        fetch(operator, projection, direction, token)
+                                .doOnError(error -> recentPages.remove(k))
+                                .cache(),
+                        maxAge)).page;
+    }
+
+    private Mono<Page> fetch(SearchOperator operator, Bson projection, String direction, String token) {
+        SearchOptions options = SearchOptions.searchOptions().option("sort", SORT);
+        if (token != null) {
+            options = options.option(direction, token);
+        }
+        List<Bson> pipeline = List.of(
+                Aggregates.search(operator, options),
+                Aggregates.limit(pageSize),
+                Aggregates.project(Projections.fields(projection,
+                        Projections.computed("paginationToken", new Document("$meta", "searchSequenceToken")))));
+
+        return Flux.from(collection.aggregate(pipeline))
+                .collectList()
+                .map(documents -> {
+                    // searchBefore returns results in reverse order
+                    if ("searchBefore".equals(direction)) {
+                        documents = new ArrayList<>(documents);
+                        Collections.reverse(documents);
+                    }
+                    return new Page(documents);
+                });
+    }
+
+    // Identifies a page by the query fingerprint and the token it starts from
+    private static String key(SearchOperator operator, Bson projection, String direction, String token) {
+        return operator.toBsonDocument().toJson() + projection.toBsonDocument().toJson()
+                + "|" + direction + "|" + token;
+    }
+
+    private static class CachedPage {
+        final Mono<Page> page;
+        final long expiresAtNanos;
+
+        CachedPage(Mono<Page> page, Duration maxAge) {
+            this.page = page;
+            this.expiresAtNanos = System.nanoTime() + maxAge.toNanos();
+        }
+
+        boolean isExpired() {
+            return System.nanoTime() - expiresAtNanos > 0;
+        }
+    }
+
+    static class Page {
+        final List<Document> documents;
+        final String firstToken;
+        final String lastToken;
+
+        Page(List<Document> documents) {
+            this.documents = documents;
+            this.firstToken = documents.isEmpty() ? null : documents.get(0).getString("paginationToken");
+            this.lastToken = documents.isEmpty()
+                    ? null : documents.get(documents.size() - 1).getString("paginationToken");
         }
     }
 }
+// end searchPager
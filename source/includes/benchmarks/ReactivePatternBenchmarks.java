@@ -0,0 +1,145 @@
+package org.example;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.result.InsertManyResult;
+import com.mongodb.client.result.InsertOneResult;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.mongodb.client.model.Filters.eq;
+
+// Runs the read and write patterns from the usage examples as JMH benchmarks.
+// Start a local mongod, or pass -jvmArgsAppend "-Dmongodb.uri=<connection string URI>"
+// to use a test deployment, then run the following command to measure throughput and
+// the allocation rate of each pattern:
+//
+//   java -jar target/benchmarks.jar ReactivePatternBenchmarks -prof gc
+//
+// To measure latency percentiles, including p99, run the benchmarks in sample mode:
+//
+//   java -jar target/benchmarks.jar ReactivePatternBenchmarks -bm sample -tu us
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReactivePatternBenchmarks {
+
+    private static final String URI = System.getProperty("mongodb.uri", "mongodb://localhost:27017");
+
+    private MongoClient mongoClient;
+    private MongoCollection<Document> writeCollection;
+    private MongoCollection<Document> readCollection;
+
+    // Holds the documents that each write benchmark inserts. Only the write
+    // benchmarks use this state, so only they run once for each batch size.
+    @State(Scope.Thread)
+    public static class WriteBatch {
+        @Param({"10", "100", "1000"})
+        public int batchSize;
+
+        private List<Document> documents;
+        private List<WriteModel<Document>> writeModels;
+
+        @Setup(Level.Invocation)
+        public void buildBatch() {
+            // Builds new documents for each call so that the driver generates new _id values
+            documents = new ArrayList<>(batchSize);
+            writeModels = new ArrayList<>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                Document document = new Document("name", "Mongo's Deli").append("sequence", i);
+                documents.add(document);
+                writeModels.add(new InsertOneModel<>(new Document(document)));
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(URI))
+                .build();
+        mongoClient = MongoClients.create(settings);
+        writeCollection = mongoClient.getDatabase("benchmarks").getCollection("writes");
+        readCollection = mongoClient.getDatabase("benchmarks").getCollection("reads");
+
+        Mono.from(readCollection.drop()).block();
+        List<Document> seed = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            seed.add(new Document("borough", i % 5 == 0 ? "Queens" : "Brooklyn")
+                    .append("name", "Restaurant " + i));
+        }
+        Mono.from(readCollection.insertMany(seed)).block();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetWrites() {
+        Mono.from(writeCollection.drop()).block();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mongoClient.close();
+    }
+
+    @Benchmark
+    public List<InsertOneResult> insertOne(WriteBatch batch) {
+        return Flux.fromIterable(batch.documents)
+                .concatMap(document -> writeCollection.insertOne(document))
+                .collectList()
+                .block();
+    }
+
+    @Benchmark
+    public InsertManyResult insertMany(WriteBatch batch) {
+        return Mono.from(writeCollection.insertMany(batch.documents)).block();
+    }
+
+    @Benchmark
+    public BulkWriteResult bulkWriteOrdered(WriteBatch batch) {
+        return Mono.from(writeCollection.bulkWrite(batch.writeModels)).block();
+    }
+
+    @Benchmark
+    public BulkWriteResult bulkWriteUnordered(WriteBatch batch) {
+        return Mono.from(writeCollection.bulkWrite(batch.writeModels,
+                new BulkWriteOptions().ordered(false))).block();
+    }
+
+    @Benchmark
+    public Document findFirst() {
+        return Mono.from(readCollection.find(eq("borough", "Queens")).first()).block();
+    }
+
+    @Benchmark
+    public List<Document> findCollectList() {
+        return Flux.from(readCollection.find(eq("borough", "Queens")))
+                .collectList()
+                .block();
+    }
+
+    @Benchmark
+    public Long countDocuments() {
+        return Mono.from(readCollection.countDocuments(eq("borough", "Queens"))).block();
+    }
+
+    @Benchmark
+    public Long estimatedDocumentCount() {
+        return Mono.from(readCollection.estimatedDocumentCount()).block();
+    }
+}
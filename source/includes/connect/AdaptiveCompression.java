@@ -0,0 +1,417 @@
+package org.example;
+
+import com.github.luben.zstd.Zstd;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCompressor;
+import com.mongodb.MongoNamespace;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.xerial.snappy.Snappy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+import static com.mongodb.client.model.Filters.eq;
+
+public class AdaptiveCompression {
+
+    public static void main(String[] args) {
+        CompressionProfiler profiler = new CompressionProfiler(100, 20, 1024, 50.0, 64 * 1024);
+        MongoClientSettings baseSettings = MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString("<connection string URI>"))
+                .addCommandListener(profiler)
+                .build();
+
+        // start-adaptive-compression-example
+        try (CompressionRouter router = new CompressionRouter(baseSettings, profiler)) {
+            MongoNamespace restaurants = new MongoNamespace("sample_restaurants", "restaurants");
+            MongoNamespace movies = new MongoNamespace("sample_mflix", "movies");
+
+            // Runs many small lookups and a few large scans
+            Flux.range(0, 2000)
+                    .flatMap(i -> Mono.from(router.collection("find", restaurants)
+                            .find(eq("restaurant_id", String.valueOf(40356018 + i % 100))).first()), 16)
+                    .thenMany(Flux.range(0, 20)
+                            .concatMap(i -> Flux.from(router.collection("find", movies).find().limit(1000))))
+                    .blockLast();
+
+            profiler.snapshot().forEach((workload, stats) ->
+                    System.out.println(workload + " -> " + profiler.recommend(workload) + " " + stats));
+        }
+        // end-adaptive-compression-example
+        profiler.close();
+    }
+}
+
+// start-compression-profiler
+// Candidate compressors, each with the settings that select it for a client
+enum Compressor {
+    NONE {
+        byte[] compress(byte[] bytes) {
+            return bytes;
+        }
+
+        List<MongoCompressor> compressorList() {
+            return Collections.emptyList();
+        }
+    },
+    SNAPPY {
+        byte[] compress(byte[] bytes) throws IOException {
+            return Snappy.compress(bytes);
+        }
+
+        List<MongoCompressor> compressorList() {
+            return Collections.singletonList(MongoCompressor.createSnappyCompressor());
+        }
+    },
+    ZLIB {
+        byte[] compress(byte[] bytes) {
+            Deflater deflater = new Deflater();
+            try {
+                deflater.setInput(bytes);
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 16);
+                byte[] chunk = new byte[8192];
+                while (!deflater.finished()) {
+                    out.write(chunk, 0, deflater.deflate(chunk));
+                }
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        List<MongoCompressor> compressorList() {
+            return Collections.singletonList(MongoCompressor.createZlibCompressor());
+        }
+    },
+    ZSTD {
+        byte[] compress(byte[] bytes) {
+            return Zstd.compress(bytes);
+        }
+
+        List<MongoCompressor> compressorList() {
+            return Collections.singletonList(MongoCompressor.createZstdCompressor());
+        }
+    };
+
+    abstract byte[] compress(byte[] bytes) throws IOException;
+
+    abstract List<MongoCompressor> compressorList();
+}
+
+// Samples command and reply sizes for each workload, compresses each sample with
+// every candidate on a background thread, and records the compression ratio and
+// CPU time per compressor
+class CompressionProfiler implements CommandListener, Closeable {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    // The server closes idle cursors after 10 minutes by default
+    private static final long CURSOR_IDLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final int MAX_TRACKED_CURSORS = 10_000;
+
+    private final int sampleEvery;
+    private final int minSamples;
+    private final int minCompressBytes;
+    private final double bytesPerCpuMicro;
+    private final int maxSampleBytes;
+    // Discards new samples while the queue is full, so the profiler never slows down commands
+    private final ThreadPoolExecutor compressionExecutor = new ThreadPoolExecutor(
+            1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(64),
+            runnable -> {
+                Thread thread = new Thread(runnable, "compression-profiler");
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.DiscardPolicy());
+    private final ConcurrentHashMap<String, WorkloadStats> workloads = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, String> pendingWorkloads = new ConcurrentHashMap<>();
+    // Workload of each open cursor, with the time after which the server has closed it if idle
+    private final ConcurrentHashMap<Long, CursorWorkload> cursorWorkloads = new ConcurrentHashMap<>();
+    private final AtomicLong nextCursorSweepNanos = new AtomicLong(System.nanoTime() + CURSOR_IDLE_NANOS);
+
+    // bytesPerCpuMicro is how many bytes of network transfer cost as much as
+    // one microsecond of CPU time. Use a higher value for slower links.
+    // maxSampleBytes limits how much of each sampled message the profiler compresses.
+    CompressionProfiler(int sampleEvery, int minSamples, int minCompressBytes, double bytesPerCpuMicro,
+                        int maxSampleBytes) {
+        this.sampleEvery = sampleEvery;
+        this.minSamples = minSamples;
+        this.minCompressBytes = minCompressBytes;
+        this.bytesPerCpuMicro = bytesPerCpuMicro;
+        this.maxSampleBytes = maxSampleBytes;
+    }
+
+    static String workload(String commandName, MongoNamespace namespace) {
+        return commandName + " " + namespace.getFullName();
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        BsonDocument command = event.getCommand();
+        String workload;
+        if (command.isNumber("getMore")) {
+            // Counts each getMore as part of the command that opened the cursor
+            // and stores it again if the reply shows more batches remain
+            CursorWorkload cursor = cursorWorkloads.remove(command.getNumber("getMore").longValue());
+            workload = cursor == null ? null : cursor.workload;
+        } else {
+            BsonValue collection = command.get(event.getCommandName());
+            workload = event.getCommandName() + " " + event.getDatabaseName()
+                    + (collection != null && collection.isString() ? "." + collection.asString().getValue() : "");
+        }
+        if (workload != null) {
+            pendingWorkloads.put(event.getRequestId(), workload);
+            sample(workload, command);
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        String workload = pendingWorkloads.remove(event.getRequestId());
+        if (workload == null) {
+            return;
+        }
+        BsonDocument response = event.getResponse();
+        if (event.getCommandName().equals("killCursors")) {
+            forgetCursors(response);
+        } else if (response.isDocument("cursor") && response.getDocument("cursor").isNumber("id")) {
+            long cursorId = response.getDocument("cursor").getNumber("id").longValue();
+            if (cursorId != 0) {
+                trackCursor(cursorId, workload);
+            }
+        }
+        sample(workload, response);
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        pendingWorkloads.remove(event.getRequestId());
+    }
+
+    // Returns the compressor that saves the most transfer cost for the workload
+    Compressor recommend(String workload) {
+        WorkloadStats stats = workloads.get(workload);
+        if (stats == null || stats.samples.sum() < minSamples) {
+            return Compressor.ZSTD;
+        }
+        double averageBytes = (double) stats.uncompressedBytes.sum() / stats.samples.sum();
+        if (averageBytes < minCompressBytes) {
+            return Compressor.NONE;
+        }
+        Compressor best = Compressor.NONE;
+        double bestScore = 0;
+        for (Compressor compressor : stats.compressedBytes.keySet()) {
+            double savedBytes = averageBytes - stats.averageCompressedBytes(compressor);
+            double score = savedBytes - stats.averageCpuMicros(compressor) * bytesPerCpuMicro;
+            if (score > bestScore) {
+                best = compressor;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    Map<String, WorkloadStats.Snapshot> snapshot() {
+        Map<String, WorkloadStats.Snapshot> snapshot = new TreeMap<>();
+        workloads.forEach((workload, stats) -> snapshot.put(workload, stats.snapshot()));
+        return snapshot;
+    }
+
+    @Override
+    public void close() {
+        compressionExecutor.shutdownNow();
+    }
+
+    // Stops tracking cursors that the server closed or no longer knows
+    private void forgetCursors(BsonDocument response) {
+        for (String field : Arrays.asList("cursorsKilled", "cursorsNotFound", "cursorsUnknown")) {
+            if (response.isArray(field)) {
+                for (BsonValue cursorId : response.getArray(field)) {
+                    if (cursorId.isNumber()) {
+                        cursorWorkloads.remove(cursorId.asNumber().longValue());
+                    }
+                }
+            }
+        }
+    }
+
+    // Removes cursors that have been idle longer than the server keeps them, at most once per
+    // timeout period, and stops tracking new cursors while the map is full
+    private void trackCursor(long cursorId, String workload) {
+        long now = System.nanoTime();
+        long nextSweep = nextCursorSweepNanos.get();
+        if (now - nextSweep >= 0 && nextCursorSweepNanos.compareAndSet(nextSweep, now + CURSOR_IDLE_NANOS)) {
+            cursorWorkloads.values().removeIf(cursor -> now - cursor.expiresAtNanos >= 0);
+        }
+        if (cursorWorkloads.size() < MAX_TRACKED_CURSORS) {
+            cursorWorkloads.put(cursorId, new CursorWorkload(workload, now + CURSOR_IDLE_NANOS));
+        }
+    }
+
+    // Encodes the document on the calling thread, because the event's document might not be
+    // valid after the listener returns, then compresses at most maxSampleBytes of it on the
+    // profiler's thread
+    private void sample(String workload, BsonDocument document) {
+        if (ThreadLocalRandom.current().nextInt(sampleEvery) != 0) {
+            return;
+        }
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        new BsonDocumentCodec().encode(new BsonBinaryWriter(buffer), document, EncoderContext.builder().build());
+        int size = buffer.getPosition();
+        byte[] bytes = Arrays.copyOf(buffer.getInternalBuffer(), Math.min(size, maxSampleBytes));
+        compressionExecutor.execute(() -> compressSample(workload, size, bytes));
+    }
+
+    // Scales the results for a truncated sample up to the size of the whole message
+    private void compressSample(String workload, int size, byte[] bytes) {
+        double scale = (double) size / bytes.length;
+        WorkloadStats stats = workloads.computeIfAbsent(workload, k -> new WorkloadStats());
+        for (Compressor compressor : stats.compressedBytes.keySet()) {
+            long start = THREADS.getCurrentThreadCpuTime();
+            long compressedBytes;
+            try {
+                compressedBytes = compressor.compress(bytes).length;
+            } catch (IOException e) {
+                compressedBytes = bytes.length;
+            }
+            stats.compressedBytes.get(compressor).add(Math.round(compressedBytes * scale));
+            stats.cpuNanos.get(compressor).add(Math.round((THREADS.getCurrentThreadCpuTime() - start) * scale));
+        }
+        stats.uncompressedBytes.add(size);
+        stats.samples.increment();
+    }
+}
+
+class CursorWorkload {
+    final String workload;
+    final long expiresAtNanos;
+
+    CursorWorkload(String workload, long expiresAtNanos) {
+        this.workload = workload;
+        this.expiresAtNanos = expiresAtNanos;
+    }
+}
+
+class WorkloadStats {
+    final LongAdder samples = new LongAdder();
+    final LongAdder uncompressedBytes = new LongAdder();
+    final EnumMap<Compressor, LongAdder> compressedBytes = new EnumMap<>(Compressor.class);
+    final EnumMap<Compressor, LongAdder> cpuNanos = new EnumMap<>(Compressor.class);
+
+    WorkloadStats() {
+        for (Compressor compressor : Compressor.values()) {
+            if (compressor != Compressor.NONE) {
+                compressedBytes.put(compressor, new LongAdder());
+                cpuNanos.put(compressor, new LongAdder());
+            }
+        }
+    }
+
+    double averageCompressedBytes(Compressor compressor) {
+        return (double) compressedBytes.get(compressor).sum() / Math.max(1, samples.sum());
+    }
+
+    double averageCpuMicros(Compressor compressor) {
+        return cpuNanos.get(compressor).sum() / 1000.0 / Math.max(1, samples.sum());
+    }
+
+    Snapshot snapshot() {
+        Map<Compressor, Double> ratios = new EnumMap<>(Compressor.class);
+        Map<Compressor, Double> cpuMicros = new EnumMap<>(Compressor.class);
+        for (Compressor compressor : compressedBytes.keySet()) {
+            ratios.put(compressor, (double) uncompressedBytes.sum() / Math.max(1, compressedBytes.get(compressor).sum()));
+            cpuMicros.put(compressor, averageCpuMicros(compressor));
+        }
+        return new Snapshot(samples.sum(), (double) uncompressedBytes.sum() / Math.max(1, samples.sum()), ratios, cpuMicros);
+    }
+
+    static final class Snapshot {
+        final long samples;
+        final double averageBytes;
+        final Map<Compressor, Double> ratios;
+        final Map<Compressor, Double> cpuMicros;
+
+        Snapshot(long samples, double averageBytes, Map<Compressor, Double> ratios, Map<Compressor, Double> cpuMicros) {
+            this.samples = samples;
+            this.averageBytes = averageBytes;
+            this.ratios = ratios;
+            this.cpuMicros = cpuMicros;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder(String.format("samples=%d avgBytes=%.0f", samples, averageBytes));
+            ratios.forEach((compressor, ratio) -> result.append(String.format(" %s=%.2fx/%.1fus",
+                    compressor.name().toLowerCase(), ratio, cpuMicros.get(compressor))));
+            return result.toString();
+        }
+    }
+}
+// end-compression-profiler
+
+// start-compression-router
+// Keeps one client for each compressor and returns collections from the client
+// that uses the recommended compressor for the workload
+class CompressionRouter implements Closeable {
+    private final MongoClientSettings baseSettings;
+    private final CompressionProfiler profiler;
+    private final Map<Compressor, MongoClient> clients = new ConcurrentHashMap<>();
+
+    CompressionRouter(MongoClientSettings baseSettings, CompressionProfiler profiler) {
+        this.baseSettings = baseSettings;
+        this.profiler = profiler;
+    }
+
+    MongoCollection<Document> collection(String commandName, MongoNamespace namespace) {
+        Compressor compressor = profiler.recommend(CompressionProfiler.workload(commandName, namespace));
+        return client(compressor)
+                .getDatabase(namespace.getDatabaseName())
+                .getCollection(namespace.getCollectionName());
+    }
+
+    private MongoClient client(Compressor compressor) {
+        // Creates each client, and its connection pools, only when first used
+        return clients.computeIfAbsent(compressor, c -> MongoClients.create(
+                MongoClientSettings.builder(baseSettings)
+                        .compressorList(c.compressorList())
+                        .build()));
+    }
+
+    @Override
+    public void close() {
+        clients.values().forEach(MongoClient::close);
+    }
+}
+// end-compression-router
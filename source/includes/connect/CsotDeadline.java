@@ -0,0 +1,272 @@
+package org.example;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Updates.inc;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.mongodb.*;
+import com.mongodb.event.*;
+import com.mongodb.reactivestreams.client.*;
+import org.bson.Document;
+import org.reactivestreams.Publisher;
+import reactor.core.CoreSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+public class CsotDeadline {
+
+    public static void main(String[] args) {
+        // start-deadline-client
+        DeadlineEventListener deadlineListener = new DeadlineEventListener();
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString("<connection string>"))
+                .contextProvider((ReactiveContextProvider) subscriber -> subscriber instanceof CoreSubscriber
+                        ? new ReactorRequestContext(((CoreSubscriber<?>) subscriber).currentContext())
+                        : null)
+                .addCommandListener(deadlineListener)
+                .applyToConnectionPoolSettings(builder -> builder.addConnectionPoolListener(deadlineListener))
+                .build();
+        // end-deadline-client
+
+        try (MongoClient mongoClient = MongoClients.create(settings)) {
+            MongoCollection<Document> restaurants = mongoClient
+                    .getDatabase("sample_restaurants")
+                    .getCollection("restaurants");
+            MongoCollection<Document> visits = mongoClient
+                    .getDatabase("sample_restaurants")
+                    .getCollection("visits");
+
+            // start-deadline-example
+            BudgetMetrics metrics = new BudgetMetrics();
+
+            Mono<Document> request = RequestDeadline.stage("find", restaurants,
+                            collection -> collection.find(eq("restaurant_id", "40356018")).first())
+                    .flatMap(restaurant -> RequestDeadline.stage("updateOne", restaurants,
+                                    collection -> collection.updateOne(eq("_id", restaurant.get("_id")), inc("visits", 1)))
+                            .then(RequestDeadline.stage("insertOne", visits,
+                                    collection -> collection.insertOne(new Document("restaurant_id", restaurant.get("_id")))))
+                            .thenReturn(restaurant));
+
+            Flux.range(0, 100)
+                    .flatMap(i -> RequestDeadline.withBudget(request, Duration.ofMillis(250), metrics)
+                            .onErrorResume(MongoOperationTimeoutException.class, e -> Mono.empty()), 10)
+                    .blockLast();
+
+            System.out.println(metrics);
+            // end-deadline-example
+        }
+    }
+}
+
+// start-request-deadline
+// An end-to-end time budget for one request, stored in the Reactor Context
+final class RequestDeadline {
+    static final String STAGE_KEY = "mongodb.deadline.stage";
+
+    private final long startNanos = System.nanoTime();
+    private final long budgetNanos;
+    private final Map<String, StageTiming> stages = new ConcurrentHashMap<>();
+
+    private RequestDeadline(Duration budget) {
+        this.budgetNanos = budget.toNanos();
+    }
+
+    // Runs the request with a new deadline that all of its stages share
+    static <T> Mono<T> withBudget(Mono<T> request, Duration budget, BudgetMetrics metrics) {
+        return Mono.defer(() -> {
+            RequestDeadline deadline = new RequestDeadline(budget);
+            return request
+                    .doFinally(signal -> metrics.record(deadline))
+                    .contextWrite(Context.of(RequestDeadline.class, deadline));
+        });
+    }
+
+    // Runs one operation with a timeout equal to the time left in the request's budget
+    static <D, T> Mono<T> stage(String name, MongoCollection<D> collection,
+                                Function<MongoCollection<D>, Publisher<T>> operation) {
+        return Mono.<T>deferContextual(context -> {
+                    RequestDeadline deadline = context.get(RequestDeadline.class);
+                    long remainingMillis = NANOSECONDS.toMillis(deadline.remainingNanos());
+                    if (remainingMillis <= 0) {
+                        deadline.stage(name).skipped.increment();
+                        return Mono.error(new MongoOperationTimeoutException(
+                                "Request deadline expired before the " + name + " stage started"));
+                    }
+                    long start = System.nanoTime();
+                    return Mono.from(operation.apply(collection.withTimeout(remainingMillis, MILLISECONDS)))
+                            .doFinally(signal -> deadline.stage(name).totalNanos.add(System.nanoTime() - start));
+                })
+                .contextWrite(context -> context.put(STAGE_KEY, name));
+    }
+
+    long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    long remainingNanos() {
+        return budgetNanos - elapsedNanos();
+    }
+
+    long budgetNanos() {
+        return budgetNanos;
+    }
+
+    StageTiming stage(String name) {
+        return stages.computeIfAbsent(name, k -> new StageTiming());
+    }
+
+    Map<String, StageTiming> stages() {
+        return stages;
+    }
+}
+
+// Time that one stage of a request spent in each part of the operation
+final class StageTiming {
+    final LongAdder checkoutNanos = new LongAdder();
+    final LongAdder serverNanos = new LongAdder();
+    final LongAdder totalNanos = new LongAdder();
+    final LongAdder skipped = new LongAdder();
+
+    // Server selection and time spent in the driver and the application
+    long otherNanos() {
+        return Math.max(0, totalNanos.sum() - checkoutNanos.sum() - serverNanos.sum());
+    }
+}
+
+// Exposes the Reactor Context of the subscriber to the driver's event listeners.
+// The subscriber's context can't change, so this view is read-only: put() and
+// delete() throw an UnsupportedOperationException.
+final class ReactorRequestContext implements RequestContext {
+    private final ContextView context;
+
+    ReactorRequestContext(ContextView context) {
+        this.context = context;
+    }
+
+    @Override
+    public <T> T get(Object key) {
+        return context.getOrDefault(key, null);
+    }
+
+    @Override
+    public boolean hasKey(Object key) {
+        return context.hasKey(key);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return context.isEmpty();
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        throw new UnsupportedOperationException("The Reactor Context is read-only");
+    }
+
+    @Override
+    public void delete(Object key) {
+        throw new UnsupportedOperationException("The Reactor Context is read-only");
+    }
+
+    @Override
+    public int size() {
+        return context.size();
+    }
+
+    @Override
+    public Stream<Map.Entry<Object, Object>> stream() {
+        return context.stream();
+    }
+}
+// end-request-deadline
+
+// start-deadline-listener
+// Assigns connection checkout and server execution times to the stage that ran the command
+class DeadlineEventListener implements CommandListener, ConnectionPoolListener {
+    private final ConcurrentHashMap<Long, Long> checkoutNanosByOperation = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, StageTiming> pendingCommands = new ConcurrentHashMap<>();
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        checkoutNanosByOperation.merge(event.getOperationId(), event.getElapsedTime(NANOSECONDS), Long::sum);
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        Long checkoutNanos = checkoutNanosByOperation.remove(event.getOperationId());
+        RequestContext context = event.getRequestContext();
+        if (context == null || !context.hasKey(RequestDeadline.class) || !context.hasKey(RequestDeadline.STAGE_KEY)) {
+            return;
+        }
+        RequestDeadline deadline = context.get(RequestDeadline.class);
+        StageTiming timing = deadline.stage(context.get(RequestDeadline.STAGE_KEY));
+        if (checkoutNanos != null) {
+            timing.checkoutNanos.add(checkoutNanos);
+        }
+        pendingCommands.put(event.getRequestId(), timing);
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        recordServerTime(event.getRequestId(), event.getElapsedTime(NANOSECONDS));
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        recordServerTime(event.getRequestId(), event.getElapsedTime(NANOSECONDS));
+    }
+
+    private void recordServerTime(int requestId, long elapsedNanos) {
+        StageTiming timing = pendingCommands.remove(requestId);
+        if (timing != null) {
+            timing.serverNanos.add(elapsedNanos);
+        }
+    }
+}
+
+// Totals the budget that each stage used across all requests
+class BudgetMetrics {
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder overBudget = new LongAdder();
+    private final ConcurrentHashMap<String, long[]> stageTotals = new ConcurrentHashMap<>();
+
+    void record(RequestDeadline deadline) {
+        requests.increment();
+        if (deadline.elapsedNanos() > deadline.budgetNanos()) {
+            overBudget.increment();
+        }
+        deadline.stages().forEach((name, timing) -> stageTotals.compute(name, (k, totals) -> {
+            long[] result = totals == null ? new long[5] : totals;
+            result[0]++;
+            result[1] += timing.checkoutNanos.sum();
+            result[2] += timing.otherNanos();
+            result[3] += timing.serverNanos.sum();
+            result[4] += timing.skipped.sum();
+            return result;
+        }));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder(String.format("requests=%d overBudget=%d%n",
+                requests.sum(), overBudget.sum()));
+        new TreeMap<>(stageTotals).forEach((name, totals) -> {
+            long count = Math.max(1, totals[0]);
+            result.append(String.format("%-10s checkout=%.2fms selectionAndDriver=%.2fms server=%.2fms skipped=%d%n",
+                    name, totals[1] / 1e6 / count, totals[2] / 1e6 / count, totals[3] / 1e6 / count, totals[4]));
+        });
+        return result.toString();
+    }
+}
+// end-deadline-listener
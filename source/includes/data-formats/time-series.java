@@ -4,14 +4,30 @@ import com.mongodb.ConnectionString;
 import com.mongodb.MongoClientSettings;
 
 import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.TimeSeriesGranularity;
 import com.mongodb.client.model.TimeSeriesOptions;
 import com.mongodb.client.result.InsertManyResult;
 import com.mongodb.reactivestreams.client.*;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Main {
     public static void main(String[] args) {
@@ -59,6 +75,241 @@ public class Main {
                     collection.insertMany(Arrays.asList(temperature1, temperature2));
             Mono.from(insertPublisher).block();
             // end-insert-time-series-data
+
+            // start-ingest-time-series
+            TimeSeriesOptions sensorOptions = new TimeSeriesOptions("timestamp")
+                    .metaField("sensor")
+                    .granularity(TimeSeriesGranularity.SECONDS);
+            Mono.from(database.createCollection("sensor_readings",
+                    new CreateCollectionOptions().timeSeriesOptions(sensorOptions))).block();
+
+            TimeSeriesIngestor ingestor = new TimeSeriesIngestor(
+                    database.getCollection("sensor_readings"),
+                    sensorOptions,
+                    50_000,                   // Points collected before a flush
+                    Duration.ofMillis(200),   // Longest time a point waits before a flush
+                    8 * 1024 * 1024,          // Largest insertMany() batch, in bytes
+                    4);                       // insertMany() calls in flight
+
+            // Readings from 100 sensors, interleaved as they would arrive
+            Flux<Document> readings = Flux.range(0, 1_000_000)
+                    .map(i -> new Document("sensor", new Document("id", i % 100).append("type", "temperature"))
+                            .append("timestamp", new Date(1727755200000L + i))
+                            .append("temperature", 50 + i % 10));
+
+            Long inserted = ingestor.ingest(readings).block();
+            System.out.println("Inserted " + inserted + " readings");
+            // end-ingest-time-series
+
+            // start-downsample-time-series
+            TimeSeriesOptions minuteOptions = new TimeSeriesOptions("timestamp")
+                    .metaField("sensor")
+                    .granularity(TimeSeriesGranularity.MINUTES);
+            Mono.from(database.createCollection("sensor_readings_1m",
+                    new CreateCollectionOptions().timeSeriesOptions(minuteOptions))).block();
+            // Stores the raw copy separately from the sensor_readings collection that the
+            // preceding example filled, so that running both examples doesn't duplicate readings
+            Mono.from(database.createCollection("sensor_readings_raw",
+                    new CreateCollectionOptions().timeSeriesOptions(sensorOptions))).block();
+
+            TimeSeriesIngestor rawIngestor = new TimeSeriesIngestor(
+                    database.getCollection("sensor_readings_raw"), sensorOptions,
+                    50_000, Duration.ofMillis(200), 8 * 1024 * 1024, 4);
+            TimeSeriesIngestor minuteIngestor = new TimeSeriesIngestor(
+                    database.getCollection("sensor_readings_1m"), minuteOptions,
+                    1_000, Duration.ofSeconds(1), 8 * 1024 * 1024, 1);
+
+            // Accepts readings up to 10 seconds late
+            TimeSeriesDownsampler downsampler = new TimeSeriesDownsampler(
+                    sensorOptions, "temperature", Duration.ofMinutes(1), Duration.ofSeconds(10));
+
+            // Writes the raw readings and the one-minute rollups from the same stream
+            Flux.from(readings)
+                    .publish(shared -> Mono.when(
+                            rawIngestor.ingest(shared),
+                            minuteIngestor.ingest(downsampler.rollUp(shared))))
+                    .blockLast();
+
+            System.out.println("Dropped " + downsampler.getLatePointCount() + " late readings");
+            // end-downsample-time-series
+        }
+    }
+}
+
+// start-time-series-ingestor
+class TimeSeriesIngestor {
+    private static final DocumentCodec CODEC = new DocumentCodec();
+
+    private final MongoCollection<RawBsonDocument> collection;
+    private final String metaField;
+    private final String timeField;
+    private final long bucketSpanMillis;
+    private final int maxPointsPerFlush;
+    private final Duration linger;
+    private final long maxBatchBytes;
+    private final int concurrency;
+
+    TimeSeriesIngestor(MongoCollection<Document> collection, TimeSeriesOptions options,
+                       int maxPointsPerFlush, Duration linger, long maxBatchBytes, int concurrency) {
+        this.collection = collection.withDocumentClass(RawBsonDocument.class);
+        this.metaField = options.getMetaField();
+        this.timeField = options.getTimeField();
+        this.bucketSpanMillis = bucketSpanMillis(options.getGranularity());
+        this.maxPointsPerFlush = maxPointsPerFlush;
+        this.linger = linger;
+        this.maxBatchBytes = maxBatchBytes;
+        this.concurrency = concurrency;
+    }
+
+    // Returns the number of inserted points
+    public Mono<Long> ingest(Publisher<Document> points) {
+        InsertManyOptions options = new InsertManyOptions().ordered(false);
+        return Flux.from(points)
+                // Flushes when enough points arrive or when the oldest point has waited long enough.
+                // Requests points only as the inserts need them, so a fast source can't fill memory.
+                .bufferTimeout(maxPointsPerFlush, linger, true)
+                .flatMapIterable(this::toBatches, 1)
+                .flatMap(batch -> collection.insertMany(batch, options), concurrency)
+                .map(result -> (long) result.getInsertedIds().size())
+                .reduce(0L, Long::sum);
+    }
+
+    // Groups the points by metadata and bucket time range, then splits each group by size
+    private List<List<RawBsonDocument>> toBatches(List<Document> points) {
+        Map<List<Object>, List<Document>> groups = new LinkedHashMap<>();
+        for (Document point : points) {
+            long bucket = point.getDate(timeField).getTime() / bucketSpanMillis;
+            Object meta = metaField == null ? null : point.get(metaField);
+            groups.computeIfAbsent(Arrays.asList(meta, bucket), k -> new ArrayList<>()).add(point);
+        }
+
+        List<List<RawBsonDocument>> batches = new ArrayList<>();
+        for (List<Document> group : groups.values()) {
+            group.sort(Comparator.comparing(point -> point.getDate(timeField)));
+            List<RawBsonDocument> batch = new ArrayList<>();
+            long batchBytes = 0;
+            for (Document point : group) {
+                // Encodes each point once, to measure it and to send it
+                RawBsonDocument encoded = new RawBsonDocument(point, CODEC);
+                int size = encoded.getByteBuffer().remaining();
+                if (!batch.isEmpty() && batchBytes + size > maxBatchBytes) {
+                    batches.add(batch);
+                    batch = new ArrayList<>();
+                    batchBytes = 0;
+                }
+                batch.add(encoded);
+                batchBytes += size;
+            }
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    // Matches the default maximum time span of a bucket for each granularity
+    private static long bucketSpanMillis(TimeSeriesGranularity granularity) {
+        if (granularity == TimeSeriesGranularity.HOURS) {
+            return TimeUnit.DAYS.toMillis(30);
+        } else if (granularity == TimeSeriesGranularity.MINUTES) {
+            return TimeUnit.DAYS.toMillis(1);
+        }
+        return TimeUnit.HOURS.toMillis(1);
+    }
+}
+// end-time-series-ingestor
+
+// start-time-series-downsampler
+class TimeSeriesDownsampler {
+    private final String metaField;
+    private final String timeField;
+    private final String valueField;
+    private final long windowMillis;
+    private final long allowedLatenessMillis;
+    private final AtomicLong latePoints = new AtomicLong();
+
+    TimeSeriesDownsampler(TimeSeriesOptions options, String valueField,
+                          Duration window, Duration allowedLateness) {
+        this.metaField = options.getMetaField();
+        this.timeField = options.getTimeField();
+        this.valueField = valueField;
+        this.windowMillis = window.toMillis();
+        this.allowedLatenessMillis = allowedLateness.toMillis();
+    }
+
+    // Number of points that arrived after their window was emitted
+    public long getLatePointCount() {
+        return latePoints.get();
+    }
+
+    // Returns one document for each metadata value and window, with the
+    // count, min, max, and avg of the value field
+    public Flux<Document> rollUp(Publisher<Document> points) {
+        return Flux.defer(() -> {
+            // Open windows, ordered by start time
+            TreeMap<Long, Map<Object, Window>> windows = new TreeMap<>();
+            long[] watermark = {Long.MIN_VALUE};
+
+            return Flux.from(points)
+                    .concatMapIterable(point -> {
+                        long time = point.getDate(timeField).getTime();
+                        long windowStart = time - Math.floorMod(time, windowMillis);
+                        if (windowStart + windowMillis <= watermark[0]) {
+                            latePoints.incrementAndGet();
+                            return new ArrayList<Document>();
+                        }
+                        windows.computeIfAbsent(windowStart, k -> new LinkedHashMap<>())
+                                .computeIfAbsent(point.get(metaField), Window::new)
+                                .add(((Number) point.get(valueField)).doubleValue());
+
+                        // Emits the windows that end before the watermark
+                        watermark[0] = Math.max(watermark[0], time - allowedLatenessMillis);
+                        return closeWindows(windows, watermark[0]);
+                    })
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(closeWindows(windows, Long.MAX_VALUE))));
+        });
+    }
+
+    private List<Document> closeWindows(TreeMap<Long, Map<Object, Window>> windows, long watermark) {
+        List<Document> closed = new ArrayList<>();
+        Iterator<Map.Entry<Long, Map<Object, Window>>> iterator = windows.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Map<Object, Window>> entry = iterator.next();
+            if (watermark != Long.MAX_VALUE && entry.getKey() + windowMillis > watermark) {
+                break;
+            }
+            for (Window window : entry.getValue().values()) {
+                closed.add(window.toDocument(entry.getKey()));
+            }
+            iterator.remove();
+        }
+        return closed;
+    }
+
+    private class Window {
+        private final Object meta;
+        private long count;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private double sum;
+
+        Window(Object meta) {
+            this.meta = meta;
+        }
+
+        void add(double value) {
+            count++;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+        }
+
+        Document toDocument(long windowStart) {
+            return new Document(metaField, meta)
+                    .append(timeField, new Date(windowStart))
+                    .append("count", count)
+                    .append("min", min)
+                    .append("max", max)
+                    .append("avg", sum / count);
         }
     }
-}
\ No newline at end of file
+}
+// end-time-series-downsampler
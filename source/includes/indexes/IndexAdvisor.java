@@ -0,0 +1,359 @@
+package org.example;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.ExplainVerbosity;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.reactivestreams.client.*;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+public class IndexAdvisorExample {
+    private static final ConnectionString URI = new ConnectionString("<connection string URI>");
+
+    public static void main(String[] args) throws IOException {
+        // start-record-workload
+        WorkloadRecorder recorder = new WorkloadRecorder();
+
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyConnectionString(URI)
+                .addCommandListener(recorder)
+                .build();
+
+        try (MongoClient mongoClient = MongoClients.create(settings)) {
+            // Replace these queries with your application's workload
+            MongoCollection<Document> restaurants = mongoClient
+                    .getDatabase("sample_restaurants")
+                    .getCollection("restaurants");
+            Flux.from(restaurants.find(Filters.eq("borough", "Queens")).sort(Sorts.ascending("name")))
+                    .then(Mono.from(restaurants.countDocuments(Filters.eq("cuisine", "Pizza"))))
+                    .block();
+
+            // Saves the recorded query shapes
+            recorder.save(Paths.get("workload.jsonl"));
+        }
+        // end-record-workload
+
+        // start-advise-indexes
+        try (MongoClient mongoClient = MongoClients.create(URI)) {
+            IndexAdvisor advisor = new IndexAdvisor(mongoClient, 20);
+
+            Flux.fromIterable(WorkloadRecorder.load(Paths.get("workload.jsonl")))
+                    .as(advisor::advise)
+                    .doOnNext(System.out::println)
+                    .blockLast();
+        }
+        // end-advise-indexes
+    }
+}
+
+// start-workload-recorder
+class WorkloadRecorder implements CommandListener {
+    private final ConcurrentHashMap<String, QueryShape> shapes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, QueryShape> pending = new ConcurrentHashMap<>();
+
+    @Override
+    public void commandStarted(final CommandStartedEvent event) {
+        BsonDocument command = event.getCommand();
+        BsonValue collection = command.get(event.getCommandName());
+        if (collection == null || !collection.isString()) {
+            return;
+        }
+        BsonDocument filter = new BsonDocument();
+        BsonDocument sort = new BsonDocument();
+        BsonDocument projection = new BsonDocument();
+        switch (event.getCommandName()) {
+            case "find":
+                filter = command.getDocument("filter", filter);
+                sort = command.getDocument("sort", sort);
+                projection = command.getDocument("projection", projection);
+                break;
+            case "aggregate":
+                // Uses the leading $match and $sort stages, which can use an index
+                for (BsonValue stage : command.getArray("pipeline")) {
+                    BsonDocument stageDocument = stage.asDocument();
+                    if (stageDocument.containsKey("$match") && filter.isEmpty() && sort.isEmpty()) {
+                        filter = stageDocument.getDocument("$match");
+                    } else if (stageDocument.containsKey("$sort") && sort.isEmpty()) {
+                        sort = stageDocument.getDocument("$sort");
+                    } else {
+                        break;
+                    }
+                }
+                break;
+            case "count":
+            case "distinct":
+                filter = command.getDocument("query", filter);
+                break;
+            default:
+                return;
+        }
+        String namespace = event.getDatabaseName() + "." + collection.asString().getValue();
+        QueryShape shape = QueryShape.of(namespace, filter, sort, projection);
+        pending.put(event.getRequestId(), shapes.computeIfAbsent(shape.key(), k -> shape));
+    }
+
+    @Override
+    public void commandSucceeded(final CommandSucceededEvent event) {
+        record(event.getRequestId(), event.getElapsedTime(TimeUnit.MICROSECONDS));
+    }
+
+    @Override
+    public void commandFailed(final CommandFailedEvent event) {
+        record(event.getRequestId(), event.getElapsedTime(TimeUnit.MICROSECONDS));
+    }
+
+    private void record(int requestId, long elapsedMicros) {
+        QueryShape shape = pending.remove(requestId);
+        if (shape != null) {
+            shape.count.increment();
+            shape.totalMicros.add(elapsedMicros);
+        }
+    }
+
+    // Writes one JSON document for each query shape
+    public void save(Path path) throws IOException {
+        List<String> lines = shapes.values().stream()
+                .map(shape -> shape.toDocument().toJson())
+                .collect(Collectors.toList());
+        Files.write(path, lines, StandardCharsets.UTF_8);
+    }
+
+    public static List<QueryShape> load(Path path) throws IOException {
+        return Files.readAllLines(path, StandardCharsets.UTF_8).stream()
+                .map(line -> QueryShape.fromDocument(Document.parse(line)))
+                .collect(Collectors.toList());
+    }
+}
+
+class QueryShape {
+    private static final Set<String> RANGE_OPERATORS = new HashSet<>(Arrays.asList(
+            "$gt", "$gte", "$lt", "$lte", "$ne", "$nin", "$regex", "$exists"));
+
+    final String namespace;
+    final List<String> equalityFields;
+    final List<String> rangeFields;
+    final Document sort;
+    final List<String> projectionFields;
+    // The first filter recorded for this shape, which the advisor uses to run explain
+    final Document sampleFilter;
+    final LongAdder count = new LongAdder();
+    final LongAdder totalMicros = new LongAdder();
+
+    private QueryShape(String namespace, List<String> equalityFields, List<String> rangeFields,
+                       Document sort, List<String> projectionFields, Document sampleFilter) {
+        this.namespace = namespace;
+        this.equalityFields = equalityFields;
+        this.rangeFields = rangeFields;
+        this.sort = sort;
+        this.projectionFields = projectionFields;
+        this.sampleFilter = sampleFilter;
+    }
+
+    static QueryShape of(String namespace, BsonDocument filter, BsonDocument sort, BsonDocument projection) {
+        List<String> equality = new ArrayList<>();
+        List<String> range = new ArrayList<>();
+        for (Map.Entry<String, BsonValue> condition : filter.entrySet()) {
+            if (condition.getKey().startsWith("$")) {
+                // Skips $and, $or, and $expr, which this advisor doesn't analyze
+                continue;
+            }
+            BsonValue value = condition.getValue();
+            boolean isRange = value.isDocument() && value.asDocument().keySet().stream()
+                    .anyMatch(RANGE_OPERATORS::contains);
+            (isRange ? range : equality).add(condition.getKey());
+        }
+        Collections.sort(equality);
+        Collections.sort(range);
+        List<String> projected = new ArrayList<>(projection.keySet());
+        Collections.sort(projected);
+        return new QueryShape(namespace, equality, range,
+                Document.parse(sort.toJson()), projected, Document.parse(filter.toJson()));
+    }
+
+    String key() {
+        return namespace + "|" + equalityFields + "|" + rangeFields + "|" + sort.toJson() + "|" + projectionFields;
+    }
+
+    long averageMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalMicros.sum() / n;
+    }
+
+    // Orders the index keys by the ESR rule: equality fields, then sort fields, then range fields
+    Document proposedIndex() {
+        Document keys = new Document();
+        equalityFields.forEach(field -> keys.put(field, 1));
+        sort.forEach((field, direction) -> keys.putIfAbsent(field, direction));
+        rangeFields.forEach(field -> keys.putIfAbsent(field, 1));
+        return keys;
+    }
+
+    Document toDocument() {
+        return new Document("namespace", namespace)
+                .append("equality", equalityFields)
+                .append("range", rangeFields)
+                .append("sort", sort)
+                .append("projection", projectionFields)
+                .append("sampleFilter", sampleFilter)
+                .append("count", count.sum())
+                .append("totalMicros", totalMicros.sum());
+    }
+
+    static QueryShape fromDocument(Document document) {
+        QueryShape shape = new QueryShape(document.getString("namespace"),
+                document.getList("equality", String.class),
+                document.getList("range", String.class),
+                document.get("sort", Document.class),
+                document.getList("projection", String.class),
+                document.get("sampleFilter", Document.class));
+        shape.count.add(document.get("count", Number.class).longValue());
+        shape.totalMicros.add(document.get("totalMicros", Number.class).longValue());
+        return shape;
+    }
+}
+// end-workload-recorder
+
+// start-index-advisor
+class IndexAdvisor {
+    private final MongoClient mongoClient;
+    private final int maxShapes;
+
+    IndexAdvisor(MongoClient mongoClient, int maxShapes) {
+        this.mongoClient = mongoClient;
+        this.maxShapes = maxShapes;
+    }
+
+    // Returns suggestions, most expensive query shapes first
+    public Flux<String> advise(Flux<QueryShape> workload) {
+        return workload.collectList().flatMapMany(shapes -> Flux.fromIterable(shapes)
+                // Ranks the shapes by the total time the server spent on them
+                .sort(Comparator.comparingLong((QueryShape shape) -> shape.totalMicros.sum()).reversed())
+                .filter(shape -> !shape.proposedIndex().isEmpty())
+                .take(maxShapes)
+                .concatMap(shape -> {
+                    String[] parts = shape.namespace.split("\\.", 2);
+                    MongoCollection<Document> collection = mongoClient.getDatabase(parts[0]).getCollection(parts[1]);
+                    return Flux.from(collection.listIndexes())
+                            .map(index -> index.get("key", Document.class))
+                            .collectList()
+                            .flatMapMany(existing -> adviseShape(collection, shape, existing));
+                })
+                .concatWith(Flux.defer(() -> redundantIndexes(shapes))));
+    }
+
+    private Flux<String> adviseShape(MongoCollection<Document> collection, QueryShape shape,
+                                     List<Document> existing) {
+        Document proposed = shape.proposedIndex();
+        if (existing.stream().anyMatch(index -> isPrefix(proposed, index))) {
+            return Flux.empty();
+        }
+        return Mono.from(collection.find(shape.sampleFilter)
+                        .sort(shape.sort)
+                        .explain(ExplainVerbosity.EXECUTION_STATS))
+                .flatMapMany(explain -> {
+                    Document stats = explain.get("executionStats", Document.class);
+                    long examined = stats.get("totalDocsExamined", Number.class).longValue();
+                    long returned = stats.get("nReturned", Number.class).longValue();
+                    // Skips shapes that the current indexes already serve well
+                    if (examined <= Math.max(1, returned) * 2) {
+                        return Flux.empty();
+                    }
+                    return Flux.just(String.format(
+                            "db.getSiblingDB(\"%s\").%s.createIndex(%s)  // %d runs, avg %d us, examined %d docs to return %d",
+                            collection.getNamespace().getDatabaseName(),
+                            collection.getNamespace().getCollectionName(),
+                            proposed.toJson(), shape.count.sum(), shape.averageMicros(), examined, returned));
+                });
+    }
+
+    // Reports indexes whose keys are a prefix of another index on the same collection. Checks
+    // only the collections that the workload queries, and skips views, which have no indexes.
+    private Flux<String> redundantIndexes(List<QueryShape> shapes) {
+        Map<String, Set<String>> collectionsByDatabase = new TreeMap<>();
+        for (QueryShape shape : shapes) {
+            String[] parts = shape.namespace.split("\\.", 2);
+            collectionsByDatabase.computeIfAbsent(parts[0], name -> new TreeSet<>()).add(parts[1]);
+        }
+        return Flux.fromIterable(collectionsByDatabase.entrySet())
+                .concatMap(entry -> {
+                    MongoDatabase database = mongoClient.getDatabase(entry.getKey());
+                    return Flux.from(database.listCollections()
+                                    .filter(Filters.and(Filters.in("name", entry.getValue()),
+                                            Filters.eq("type", "collection"))))
+                            .map(info -> info.getString("name"))
+                            .concatMap(collectionName -> Flux.from(database.getCollection(collectionName).listIndexes())
+                                    .filter(IndexAdvisor::isPlainIndex)
+                                    .collectList()
+                                    .flatMapMany(indexes -> Flux.fromIterable(indexes)
+                                            .filter(index -> !index.getString("name").equals("_id_")
+                                                    && indexes.stream().anyMatch(other -> covers(other, index, indexes)))
+                                            .map(index -> String.format("%s.%s: index %s is redundant",
+                                                    entry.getKey(), collectionName, index.getString("name")))));
+                });
+    }
+
+    // Returns true if the other index makes the index redundant. Of two indexes with the same
+    // keys, reports only the one that is listed later, so that one of them is kept.
+    private static boolean covers(Document other, Document index, List<Document> indexes) {
+        Document otherKeys = other.get("key", Document.class);
+        Document keys = index.get("key", Document.class);
+        return other != index
+                && isPrefix(keys, otherKeys)
+                && (otherKeys.size() > keys.size() || indexes.indexOf(other) < indexes.indexOf(index));
+    }
+
+    // Returns false for indexes that have a purpose other than serving queries, such as TTL and
+    // unique indexes, and for indexes that don't contain every document or that compare strings
+    // differently, which another index with the same keys can't replace
+    private static boolean isPlainIndex(Document index) {
+        return !index.containsKey("expireAfterSeconds")
+                && !index.containsKey("partialFilterExpression")
+                && !index.getBoolean("sparse", false)
+                && !index.getBoolean("unique", false)
+                && !index.containsKey("collation");
+    }
+
+    // Returns true if the keys of the candidate, in order and direction, start the index
+    private static boolean isPrefix(Document candidate, Document index) {
+        if (candidate.size() > index.size()) {
+            return false;
+        }
+        Iterator<Map.Entry<String, Object>> indexKeys = index.entrySet().iterator();
+        for (Map.Entry<String, Object> key : candidate.entrySet()) {
+            Map.Entry<String, Object> indexKey = indexKeys.next();
+            if (!key.getKey().equals(indexKey.getKey()) || !sameDirection(key.getValue(), indexKey.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Compares key types such as 1 and 1.0 by sign, and special types such as "text" by value
+    private static boolean sameDirection(Object first, Object second) {
+        if (first instanceof Number && second instanceof Number) {
+            return Math.signum(((Number) first).doubleValue()) == Math.signum(((Number) second).doubleValue());
+        }
+        return first.equals(second);
+    }
+}
+// end-index-advisor
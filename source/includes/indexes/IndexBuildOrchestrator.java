@@ -0,0 +1,261 @@
+package org.example;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.reactivestreams.client.*;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.reactivestreams.Publisher;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public class IndexBuildExample {
+    private static final ConnectionString URI = new ConnectionString("<connection string URI>");
+
+    public static void main(String[] args) {
+        // start-orchestrate-index-builds
+        // Records the latency of the application's commands in 10-second windows
+        ApplicationLatency applicationLatency = new ApplicationLatency(Duration.ofSeconds(10));
+
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyConnectionString(URI)
+                .addCommandListener(applicationLatency)
+                .build();
+
+        try (MongoClient mongoClient = MongoClients.create(settings)) {
+            MongoCollection<Document> movies = mongoClient.getDatabase("sample_mflix").getCollection("movies");
+
+            IndexBuildOrchestrator orchestrator = new IndexBuildOrchestrator(
+                    mongoClient,
+                    applicationLatency,
+                    2,                          // Builds that run at the same time
+                    50_000,                     // Highest p99 latency, in microseconds, to start a build
+                    Duration.ofSeconds(10));    // How often to check latency and progress
+
+            List<IndexBuild> builds = Arrays.asList(
+                    IndexBuild.index(movies, Indexes.ascending("year", "title"), new IndexOptions()),
+                    IndexBuild.index(movies, Indexes.descending("imdb.rating"), new IndexOptions()),
+                    IndexBuild.searchIndex(movies, "plots",
+                            new Document("mappings", new Document("dynamic", true))));
+
+            Disposable progress = orchestrator.progress()
+                    .subscribe(System.out::println);
+
+            orchestrator.run(builds)
+                    .doOnNext(System.out::println)
+                    .blockLast();
+
+            progress.dispose();
+        }
+        // end-orchestrate-index-builds
+    }
+}
+
+// start-index-build-class
+class IndexBuild {
+    final String description;
+    final Supplier<Publisher<?>> start;
+
+    private IndexBuild(String description, Supplier<Publisher<?>> start) {
+        this.description = description;
+        this.start = start;
+    }
+
+    static IndexBuild index(MongoCollection<Document> collection, Bson keys, IndexOptions options) {
+        return new IndexBuild(collection.getNamespace() + " " + keys.toBsonDocument().toJson(),
+                () -> collection.createIndex(keys, options));
+    }
+
+    // createSearchIndex() returns when Atlas accepts the index, so this build
+    // also waits until the index is ready to use
+    static IndexBuild searchIndex(MongoCollection<Document> collection, String name, Document definition) {
+        Mono<Document> ready = Flux.from(collection.listSearchIndexes().name(name))
+                .filter(index -> "READY".equals(index.getString("status")))
+                .next()
+                .repeatWhenEmpty(attempts -> attempts.delayElements(Duration.ofSeconds(10)));
+        return new IndexBuild(collection.getNamespace() + " search index " + name,
+                () -> Mono.from(collection.createSearchIndex(name, definition)).then(ready));
+    }
+}
+// end-index-build-class
+
+// start-index-build-orchestrator-class
+class IndexBuildOrchestrator {
+    private final MongoClient mongoClient;
+    private final ApplicationLatency applicationLatency;
+    private final int maxConcurrentBuilds;
+    private final long maxP99Micros;
+    private final Duration pollInterval;
+
+    IndexBuildOrchestrator(MongoClient mongoClient, ApplicationLatency applicationLatency,
+                           int maxConcurrentBuilds, long maxP99Micros, Duration pollInterval) {
+        this.mongoClient = mongoClient;
+        this.applicationLatency = applicationLatency;
+        this.maxConcurrentBuilds = maxConcurrentBuilds;
+        this.maxP99Micros = maxP99Micros;
+        this.pollInterval = pollInterval;
+    }
+
+    // Runs the builds in order, up to maxConcurrentBuilds at a time, and returns a message for each event.
+    // A failed build doesn't stop the builds after it.
+    public Flux<String> run(List<IndexBuild> builds) {
+        return Flux.fromIterable(builds)
+                .flatMapSequential(build -> waitUntilHealthy()
+                        .thenMany(Flux.concat(
+                                Mono.just("Started " + build.description),
+                                Flux.from(build.start.get()).then(Mono.just("Finished " + build.description))))
+                        .onErrorResume(error -> Mono.just("Failed " + build.description + ": " + error.getMessage())),
+                        maxConcurrentBuilds, 1);
+    }
+
+    // Reports the progress of index builds on the server until you dispose the subscription
+    public Flux<String> progress() {
+        Document currentOp = new Document("currentOp", true)
+                .append("$or", Arrays.asList(
+                        new Document("command.createIndexes", new Document("$exists", true)),
+                        new Document("msg", new Document("$regex", "^Index Build"))));
+
+        return Flux.interval(Duration.ZERO, pollInterval)
+                .concatMap(tick -> mongoClient.getDatabase("admin").runCommand(currentOp))
+                .flatMapIterable(result -> result.getList("inprog", Document.class))
+                .map(op -> {
+                    Document progress = op.get("progress", Document.class);
+                    String done = progress == null ? "" : String.format(" (%d of %d)",
+                            progress.get("done", Number.class).longValue(),
+                            progress.get("total", Number.class).longValue());
+                    return op.getString("ns") + ": " + op.getString("msg") + done;
+                });
+    }
+
+    // Completes when the p99 latency of the application's commands is at or below the threshold
+    private Mono<Void> waitUntilHealthy() {
+        return Flux.interval(Duration.ZERO, pollInterval)
+                .filter(tick -> applicationLatency.p99Micros() <= maxP99Micros)
+                .next()
+                .then();
+    }
+}
+// end-index-build-orchestrator-class
+
+// start-application-latency
+// Records the latency of the application's commands in fixed time windows, and reports the
+// p99 latency of the last complete window. Ignores the commands that the orchestrator runs.
+class ApplicationLatency implements CommandListener {
+    private static final Set<String> ORCHESTRATOR_COMMANDS = new HashSet<>(Arrays.asList(
+            "createIndexes", "createSearchIndexes", "currentOp"));
+    // Bucket i counts latencies below 2^i microseconds; the last bucket collects the rest
+    private static final int BUCKETS = 32;
+
+    private final long windowNanos;
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final Set<Integer> ignoredRequests = ConcurrentHashMap.newKeySet();
+    private volatile long windowStartNanos = System.nanoTime();
+    private volatile long completedP99Micros;
+
+    ApplicationLatency(Duration window) {
+        this.windowNanos = window.toNanos();
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void commandStarted(final CommandStartedEvent event) {
+        if (isOrchestratorCommand(event.getCommandName(), event.getCommand())) {
+            ignoredRequests.add(event.getRequestId());
+        }
+    }
+
+    @Override
+    public void commandSucceeded(final CommandSucceededEvent event) {
+        record(event.getRequestId(), event.getElapsedTime(TimeUnit.MICROSECONDS));
+    }
+
+    @Override
+    public void commandFailed(final CommandFailedEvent event) {
+        record(event.getRequestId(), event.getElapsedTime(TimeUnit.MICROSECONDS));
+    }
+
+    // Returns the upper bound, in microseconds, of the histogram bucket that holds the p99
+    // latency of the last complete window. Reading the value doesn't change it.
+    long p99Micros() {
+        rotate();
+        return completedP99Micros;
+    }
+
+    private void record(int requestId, long elapsedMicros) {
+        if (!ignoredRequests.remove(requestId)) {
+            rotate();
+            int bucket = 64 - Long.numberOfLeadingZeros(elapsedMicros);
+            buckets[Math.min(bucket, BUCKETS - 1)].increment();
+        }
+    }
+
+    // Starts a new window when the current one is full. If no window ended for more than a
+    // window's length, reports 0 instead of the latency of older commands.
+    private void rotate() {
+        long now = System.nanoTime();
+        if (now - windowStartNanos < windowNanos) {
+            return;
+        }
+        synchronized (this) {
+            if (now - windowStartNanos < windowNanos) {
+                return;
+            }
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sumThenReset();
+            }
+            completedP99Micros = now - windowStartNanos < 2 * windowNanos ? p99Micros(counts) : 0;
+            windowStartNanos = now;
+        }
+    }
+
+    private static long p99Micros(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        long threshold = (long) Math.ceil(total * 0.99);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= threshold && seen > 0) {
+                return 1L << i;
+            }
+        }
+        return 0;
+    }
+
+    // The listSearchIndexes() method runs an aggregate command with a $listSearchIndexes stage
+    private static boolean isOrchestratorCommand(String commandName, BsonDocument command) {
+        if (ORCHESTRATOR_COMMANDS.contains(commandName)) {
+            return true;
+        }
+        if (commandName.equals("aggregate") && command.isArray("pipeline")) {
+            BsonArray pipeline = command.getArray("pipeline");
+            return !pipeline.isEmpty() && pipeline.get(0).asDocument().containsKey("$listSearchIndexes");
+        }
+        return false;
+    }
+}
+// end-application-latency
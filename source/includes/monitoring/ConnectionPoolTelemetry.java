@@ -0,0 +1,279 @@
+package org.example;
+
+import com.mongodb.connection.ConnectionId;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.*;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// start-pool-telemetry-listener
+public class ConnectionPoolTelemetry implements ConnectionPoolListener {
+    private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    private final ConcurrentHashMap<ServerId, ServerPoolStats> pools = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ConnectionId, Long> checkedOutAt = new ConcurrentHashMap<>();
+    private final Duration window;
+
+    // Reports the percentiles and rates of the last complete window of this length
+    public ConnectionPoolTelemetry(Duration window) {
+        this.window = window;
+    }
+
+    @Override
+    public void connectionPoolCreated(final ConnectionPoolCreatedEvent event) {
+        ServerPoolStats stats = statsFor(event.getServerId());
+        try {
+            mBeanServer.registerMBean(stats, objectName(event.getServerId()));
+        } catch (JMException e) {
+            throw new IllegalStateException("Unable to register connection pool telemetry MBean", e);
+        }
+    }
+
+    @Override
+    public void connectionPoolClosed(final ConnectionPoolClosedEvent event) {
+        pools.remove(event.getServerId());
+        try {
+            mBeanServer.unregisterMBean(objectName(event.getServerId()));
+        } catch (JMException e) {
+            // The MBean was never registered or is already gone
+        }
+    }
+
+    @Override
+    public void connectionCreated(final ConnectionCreatedEvent event) {
+        statsFor(event.getConnectionId().getServerId()).connectionCreated();
+    }
+
+    @Override
+    public void connectionClosed(final ConnectionClosedEvent event) {
+        statsFor(event.getConnectionId().getServerId()).connectionClosed();
+        checkedOutAt.remove(event.getConnectionId());
+    }
+
+    @Override
+    public void connectionCheckOutStarted(final ConnectionCheckOutStartedEvent event) {
+        statsFor(event.getServerId()).waiting.increment();
+    }
+
+    @Override
+    public void connectionCheckedOut(final ConnectionCheckedOutEvent event) {
+        // The elapsed time runs from the matching ConnectionCheckOutStartedEvent
+        statsFor(event.getConnectionId().getServerId())
+                .checkOutSucceeded(event.getElapsedTime(TimeUnit.MICROSECONDS));
+        checkedOutAt.put(event.getConnectionId(), System.nanoTime());
+    }
+
+    @Override
+    public void connectionCheckOutFailed(final ConnectionCheckOutFailedEvent event) {
+        statsFor(event.getServerId()).checkOutFailed(event.getElapsedTime(TimeUnit.MICROSECONDS));
+    }
+
+    @Override
+    public void connectionCheckedIn(final ConnectionCheckedInEvent event) {
+        Long start = checkedOutAt.remove(event.getConnectionId());
+        if (start != null) {
+            statsFor(event.getConnectionId().getServerId())
+                    .connectionHeld(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        }
+    }
+
+    // Returns a copy of the metrics for each server, which later events don't change. The
+    // ServerId includes the ClusterId, so the servers of different clients that share this
+    // listener have separate entries.
+    public Map<ServerId, ServerPoolMXBean> snapshot() {
+        Map<ServerId, ServerPoolMXBean> snapshot = new HashMap<>();
+        pools.forEach((serverId, stats) -> snapshot.put(serverId, new ServerPoolSnapshot(stats)));
+        return snapshot;
+    }
+
+    private ServerPoolStats statsFor(ServerId serverId) {
+        ServerPoolStats stats = pools.get(serverId);
+        return stats != null ? stats : pools.computeIfAbsent(serverId, k -> new ServerPoolStats(window));
+    }
+
+    // Includes the cluster ID, which is unique for each client, so that the MXBeans of
+    // different clients don't have the same name
+    private static ObjectName objectName(ServerId serverId) throws JMException {
+        return new ObjectName("org.mongodb.driver:type=ConnectionPoolTelemetry"
+                + ",clusterId=" + ObjectName.quote(serverId.getClusterId().getValue())
+                + ",host=" + ObjectName.quote(serverId.getAddress().getHost())
+                + ",port=" + serverId.getAddress().getPort());
+    }
+
+    public interface ServerPoolMXBean {
+        long getWaitQueueSize();
+        long getCheckOutFailedCount();
+        long getCheckOutWaitP50Micros();
+        long getCheckOutWaitP99Micros();
+        long getCheckOutWaitMaxMicros();
+        long getHeldP50Micros();
+        long getHeldP99Micros();
+        long getConnectionsCreatedCount();
+        long getConnectionsClosedCount();
+        double getConnectionsCreatedPerSecond();
+        double getConnectionsClosedPerSecond();
+    }
+
+    // Reports the wait queue size and the counts since the pool was created, and the
+    // percentiles and rates of the last complete window
+    static class ServerPoolStats implements ServerPoolMXBean {
+        private final long windowNanos;
+        final LongAdder waiting = new LongAdder();
+        private final LongAdder checkOutFailed = new LongAdder();
+        private final LongAdder created = new LongAdder();
+        private final LongAdder closed = new LongAdder();
+        private volatile Window current;
+        private volatile Window completed;
+
+        ServerPoolStats(Duration window) {
+            this.windowNanos = window.toNanos();
+            long now = System.nanoTime();
+            this.current = new Window(now);
+            this.completed = new Window(now - windowNanos).end(now);
+        }
+
+        void checkOutSucceeded(long waitMicros) {
+            waiting.decrement();
+            window().checkOutWait.record(waitMicros);
+        }
+
+        void checkOutFailed(long waitMicros) {
+            waiting.decrement();
+            checkOutFailed.increment();
+            window().checkOutWait.record(waitMicros);
+        }
+
+        void connectionHeld(long micros) {
+            window().held.record(micros);
+        }
+
+        void connectionCreated() {
+            created.increment();
+            window().created.increment();
+        }
+
+        void connectionClosed() {
+            closed.increment();
+            window().closed.increment();
+        }
+
+        @Override public long getWaitQueueSize() { return waiting.sum(); }
+        @Override public long getCheckOutFailedCount() { return checkOutFailed.sum(); }
+        @Override public long getCheckOutWaitP50Micros() { return completedWindow().checkOutWaitMicros(50); }
+        @Override public long getCheckOutWaitP99Micros() { return completedWindow().checkOutWaitMicros(99); }
+        @Override public long getCheckOutWaitMaxMicros() { return completedWindow().checkOutWaitMicros(100); }
+        @Override public long getHeldP50Micros() { return completedWindow().heldMicros(50); }
+        @Override public long getHeldP99Micros() { return completedWindow().heldMicros(99); }
+        @Override public long getConnectionsCreatedCount() { return created.sum(); }
+        @Override public long getConnectionsClosedCount() { return closed.sum(); }
+        @Override public double getConnectionsCreatedPerSecond() { return completedWindow().perSecond(true); }
+        @Override public double getConnectionsClosedPerSecond() { return completedWindow().perSecond(false); }
+
+        private Window completedWindow() {
+            window();
+            return completed;
+        }
+
+        // Starts a new window when the current one is full. If the current window ended
+        // more than a window ago, reports an empty window instead of its older data.
+        private Window window() {
+            long now = System.nanoTime();
+            Window window = current;
+            if (now - window.startNanos < windowNanos) {
+                return window;
+            }
+            synchronized (this) {
+                window = current;
+                if (now - window.startNanos >= windowNanos) {
+                    completed = now - window.startNanos < 2 * windowNanos
+                            ? window.end(now)
+                            : new Window(now - windowNanos).end(now);
+                    window = new Window(now);
+                    current = window;
+                }
+                return window;
+            }
+        }
+    }
+
+    private static class Window {
+        final long startNanos;
+        private long endNanos;
+        final LatencyHistogram checkOutWait = new LatencyHistogram();
+        final LatencyHistogram held = new LatencyHistogram();
+        final LongAdder created = new LongAdder();
+        final LongAdder closed = new LongAdder();
+
+        Window(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        Window end(long endNanos) {
+            this.endNanos = endNanos;
+            return this;
+        }
+
+        long checkOutWaitMicros(double percentile) {
+            return checkOutWait.counts(false).percentileMicros(percentile);
+        }
+
+        long heldMicros(double percentile) {
+            return held.counts(false).percentileMicros(percentile);
+        }
+
+        double perSecond(boolean createdConnections) {
+            long count = createdConnections ? created.sum() : closed.sum();
+            return count / (Math.max(1, endNanos - startNanos) / 1e9);
+        }
+    }
+
+    // Holds the values that a ServerPoolStats instance reported when the snapshot was taken
+    static class ServerPoolSnapshot implements ServerPoolMXBean {
+        private final long waitQueueSize;
+        private final long checkOutFailedCount;
+        private final long checkOutWaitP50Micros;
+        private final long checkOutWaitP99Micros;
+        private final long checkOutWaitMaxMicros;
+        private final long heldP50Micros;
+        private final long heldP99Micros;
+        private final long connectionsCreatedCount;
+        private final long connectionsClosedCount;
+        private final double connectionsCreatedPerSecond;
+        private final double connectionsClosedPerSecond;
+
+        ServerPoolSnapshot(ServerPoolMXBean stats) {
+            this.waitQueueSize = stats.getWaitQueueSize();
+            this.checkOutFailedCount = stats.getCheckOutFailedCount();
+            this.checkOutWaitP50Micros = stats.getCheckOutWaitP50Micros();
+            this.checkOutWaitP99Micros = stats.getCheckOutWaitP99Micros();
+            this.checkOutWaitMaxMicros = stats.getCheckOutWaitMaxMicros();
+            this.heldP50Micros = stats.getHeldP50Micros();
+            this.heldP99Micros = stats.getHeldP99Micros();
+            this.connectionsCreatedCount = stats.getConnectionsCreatedCount();
+            this.connectionsClosedCount = stats.getConnectionsClosedCount();
+            this.connectionsCreatedPerSecond = stats.getConnectionsCreatedPerSecond();
+            this.connectionsClosedPerSecond = stats.getConnectionsClosedPerSecond();
+        }
+
+        @Override public long getWaitQueueSize() { return waitQueueSize; }
+        @Override public long getCheckOutFailedCount() { return checkOutFailedCount; }
+        @Override public long getCheckOutWaitP50Micros() { return checkOutWaitP50Micros; }
+        @Override public long getCheckOutWaitP99Micros() { return checkOutWaitP99Micros; }
+        @Override public long getCheckOutWaitMaxMicros() { return checkOutWaitMaxMicros; }
+        @Override public long getHeldP50Micros() { return heldP50Micros; }
+        @Override public long getHeldP99Micros() { return heldP99Micros; }
+        @Override public long getConnectionsCreatedCount() { return connectionsCreatedCount; }
+        @Override public long getConnectionsClosedCount() { return connectionsClosedCount; }
+        @Override public double getConnectionsCreatedPerSecond() { return connectionsCreatedPerSecond; }
+        @Override public double getConnectionsClosedPerSecond() { return connectionsClosedPerSecond; }
+    }
+}
+// end-pool-telemetry-listener
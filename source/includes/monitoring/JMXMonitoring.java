@@ -1,14 +1,21 @@
 package org.example;
 
 import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
 import com.mongodb.management.JMXConnectionPoolListener;
 import com.mongodb.reactivestreams.client.*;
+import org.bson.Document;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
 
 public class JMXMonitoring {
 
     private static final ConnectionString URI = new ConnectionString("<connection string URI>");
 
     public static void main(String[] args) throws InterruptedException {
+        poolTelemetry();
+
         // start-jmx-example
         JMXConnectionPoolListener connectionPoolListener = new JMXConnectionPoolListener();
 
@@ -20,5 +27,39 @@ public class JMXMonitoring {
         }
         // end-jmx-example
     }
+
+    private static void poolTelemetry() throws InterruptedException {
+        // start-pool-telemetry-example
+        Duration window = Duration.ofSeconds(10);
+        ConnectionPoolTelemetry poolTelemetry = new ConnectionPoolTelemetry(window);
+
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyConnectionString(URI)
+                .applyToConnectionPoolSettings(builder ->
+                        builder.addConnectionPoolListener(poolTelemetry))
+                .build();
+
+        try (MongoClient mongoClient = MongoClients.create(settings)) {
+            MongoCollection<Document> collection = mongoClient
+                    .getDatabase("test_db")
+                    .getCollection("test_collection");
+
+            // Run concurrent operations to generate pool activity
+            Flux.range(0, 1000)
+                    .flatMap(i -> collection.find().first(), 256)
+                    .blockLast();
+
+            // Waits for the window that contains the operations to end, then prints its metrics
+            Thread.sleep(window.toMillis());
+            poolTelemetry.snapshot().forEach((serverId, pool) ->
+                    System.out.printf("%s: waiting=%d, checkOutWaitP99=%dus, heldP99=%dus, created/s=%.2f%n",
+                            serverId.getAddress(),
+                            pool.getWaitQueueSize(),
+                            pool.getCheckOutWaitP99Micros(),
+                            pool.getHeldP99Micros(),
+                            pool.getConnectionsCreatedPerSecond()));
+        }
+        // end-pool-telemetry-example
+    }
 }
 
@@ -0,0 +1,58 @@
+package org.example;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// start-latency-histogram
+// Counts durations in fixed power-of-two buckets without locking
+public class LatencyHistogram {
+    // Bucket i counts durations below 2^i microseconds; the last bucket collects the rest
+    private static final int BUCKETS = 32;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void record(long micros) {
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        buckets[Math.min(bucket, BUCKETS - 1)].increment();
+    }
+
+    // Returns a copy of the counts, and sets the counts to zero if reset is true
+    Counts counts(boolean reset) {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = reset ? buckets[i].sumThenReset() : buckets[i].sum();
+        }
+        return new Counts(counts);
+    }
+
+    static class Counts {
+        private final long[] counts;
+
+        Counts(long[] counts) {
+            this.counts = counts;
+        }
+
+        // Returns the upper bound, in microseconds, of the bucket that holds the percentile
+        long percentileMicros(double percentile) {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            long threshold = (long) Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= threshold && seen > 0) {
+                    return 1L << i;
+                }
+            }
+            return 0;
+        }
+    }
+}
+// end-latency-histogram
@@ -5,11 +5,16 @@ import com.mongodb.MongoClientSettings;
 
 import com.mongodb.event.*;
 import com.mongodb.reactivestreams.client.*;
+import org.bson.BsonValue;
 import org.bson.Document;
 import reactor.core.publisher.Flux;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Monitoring {
 
@@ -21,6 +26,8 @@ public class Monitoring {
         Monitoring examples = new Monitoring();
         System.out.println("\n---Command Event---\n");
         examples.monitorCommandEvent();
+        System.out.println("\n---Command Metrics---\n");
+        examples.monitorCommandMetrics();
         System.out.println("\n---Cluster Event---\n");
         examples.monitorClusterEvent();
         System.out.println("\n---Connection Pool Event---\n");
@@ -47,6 +54,31 @@ public class Monitoring {
         // end-monitor-command-example
     }
 
+    private void monitorCommandMetrics() {
+        // start-monitor-command-metrics-example
+        CommandMetrics commandMetrics = new CommandMetrics();
+
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyConnectionString(URI)
+                .addCommandListener(commandMetrics)
+                .build();
+
+        try (MongoClient mongoClient = MongoClients.create(settings)) {
+            MongoDatabase database = mongoClient.getDatabase(DATABASE);
+            MongoCollection<Document> collection = database.getCollection(COLLECTION);
+
+            // Run some commands to record metrics
+            Flux.range(0, 100)
+                    .flatMap(i -> collection.find().first())
+                    .blockLast();
+
+            // Read the metrics and start a new interval
+            commandMetrics.snapshot(true).forEach((name, stats) ->
+                    System.out.println(name + " " + stats));
+        }
+        // end-monitor-command-metrics-example
+    }
+
     private void monitorClusterEvent() {
         // start-monitor-cluster-example
         MongoClientSettings settings = MongoClientSettings.builder()
@@ -107,6 +139,126 @@ class CommandCounter implements CommandListener {
 }
 // end-command-listener
 
+// start-command-metrics-listener
+class CommandMetrics implements CommandListener {
+    private final ConcurrentHashMap<String, CommandStats> byCommand = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, CommandStats>> byNamespace =
+            new ConcurrentHashMap<>();
+    // Namespace stats of each in-flight command, by request ID, removed when the command completes
+    private final ConcurrentHashMap<Integer, CommandStats> pending = new ConcurrentHashMap<>();
+
+    @Override
+    public void commandStarted(final CommandStartedEvent event) {
+        statsFor(byCommand, event.getCommandName()).started.increment();
+
+        // Most commands name their target collection in the value of the first field
+        BsonValue target = event.getCommand().get(event.getCommandName());
+        if (target != null && target.isString()) {
+            CommandStats stats = statsFor(
+                    byNamespace.computeIfAbsent(event.getDatabaseName(), k -> new ConcurrentHashMap<>()),
+                    target.asString().getValue());
+            stats.started.increment();
+            pending.put(event.getRequestId(), stats);
+        }
+    }
+
+    @Override
+    public void commandSucceeded(final CommandSucceededEvent event) {
+        long elapsedMicros = event.getElapsedTime(TimeUnit.MICROSECONDS);
+        statsFor(byCommand, event.getCommandName()).recordSuccess(elapsedMicros);
+        CommandStats namespaceStats = pending.remove(event.getRequestId());
+        if (namespaceStats != null) {
+            namespaceStats.recordSuccess(elapsedMicros);
+        }
+    }
+
+    @Override
+    public void commandFailed(final CommandFailedEvent event) {
+        long elapsedMicros = event.getElapsedTime(TimeUnit.MICROSECONDS);
+        statsFor(byCommand, event.getCommandName()).recordFailure(elapsedMicros);
+        CommandStats namespaceStats = pending.remove(event.getRequestId());
+        if (namespaceStats != null) {
+            namespaceStats.recordFailure(elapsedMicros);
+        }
+    }
+
+    // Returns the metrics for each command name and for each "<database>.<collection>" namespace
+    public Map<String, CommandStats.Snapshot> snapshot(boolean reset) {
+        Map<String, CommandStats.Snapshot> snapshot = new TreeMap<>();
+        byCommand.forEach((name, stats) -> snapshot.put(name, stats.snapshot(reset)));
+        byNamespace.forEach((database, collections) -> collections.forEach((collection, stats) ->
+                snapshot.put(database + "." + collection, stats.snapshot(reset))));
+        return snapshot;
+    }
+
+    private static CommandStats statsFor(ConcurrentHashMap<String, CommandStats> map, String key) {
+        // Uses get() first so that the common case does not lock the map bin
+        CommandStats stats = map.get(key);
+        return stats != null ? stats : map.computeIfAbsent(key, k -> new CommandStats());
+    }
+}
+
+class CommandStats {
+    final LongAdder started = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    void recordSuccess(long elapsedMicros) {
+        succeeded.increment();
+        record(elapsedMicros);
+    }
+
+    void recordFailure(long elapsedMicros) {
+        failed.increment();
+        record(elapsedMicros);
+    }
+
+    private void record(long elapsedMicros) {
+        totalMicros.add(elapsedMicros);
+        histogram.record(elapsedMicros);
+    }
+
+    Snapshot snapshot(boolean reset) {
+        return new Snapshot(
+                reset ? started.sumThenReset() : started.sum(),
+                reset ? succeeded.sumThenReset() : succeeded.sum(),
+                reset ? failed.sumThenReset() : failed.sum(),
+                reset ? totalMicros.sumThenReset() : totalMicros.sum(),
+                histogram.counts(reset));
+    }
+
+    static class Snapshot {
+        final long started;
+        final long succeeded;
+        final long failed;
+        final long totalMicros;
+        final LatencyHistogram.Counts histogram;
+
+        Snapshot(long started, long succeeded, long failed, long totalMicros, LatencyHistogram.Counts histogram) {
+            this.started = started;
+            this.succeeded = succeeded;
+            this.failed = failed;
+            this.totalMicros = totalMicros;
+            this.histogram = histogram;
+        }
+
+        long percentileMicros(double percentile) {
+            return histogram.percentileMicros(percentile);
+        }
+
+        @Override
+        public String toString() {
+            long completed = succeeded + failed;
+            return String.format("{started=%d, succeeded=%d, failed=%d, avgMicros=%d, p50Micros<=%d, p99Micros<=%d}",
+                    started, succeeded, failed, completed == 0 ? 0 : totalMicros / completed,
+                    percentileMicros(50), percentileMicros(99));
+        }
+    }
+}
+// end-command-metrics-listener
+
 // start-cluster-listener
 class IsWritable implements ClusterListener {
     private boolean isWritable;
@@ -0,0 +1,156 @@
+package org.example;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ReadPreference;
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ServerDescription;
+import com.mongodb.event.ClusterDescriptionChangedEvent;
+import com.mongodb.event.ClusterListener;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import org.bson.Document;
+import org.reactivestreams.Publisher;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public class PrimaryReadiness {
+
+    public static void main(String[] args) {
+        // start-primary-readiness-example
+        int warmConnections = 20;
+        PrimaryWarmer primaryWarmer = new PrimaryWarmer(warmConnections);
+
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString("<connection string URI>"))
+                .applyToClusterSettings(builder -> builder.addClusterListener(primaryWarmer))
+                // Keeps the warmed connections open after the warm-up
+                .applyToConnectionPoolSettings(builder -> builder.minSize(warmConnections))
+                .build();
+
+        try (MongoClient mongoClient = MongoClients.create(settings)) {
+            primaryWarmer.attach(mongoClient);
+            MongoCollection<Document> collection = mongoClient
+                    .getDatabase("sample_restaurants")
+                    .getCollection("restaurants");
+
+            primaryWarmer.writable()
+                    .subscribe(writable -> System.out.println(writable ? "Writable" : "Not writable"));
+
+            // Waits up to 10 seconds for a primary instead of failing during an election
+            Flux.range(0, 1000)
+                    .concatMap(i -> primaryWarmer.whenWritable(Duration.ofSeconds(10),
+                            () -> collection.insertOne(new Document("visit", i))))
+                    .blockLast();
+
+            System.out.println(primaryWarmer);
+        }
+        // end-primary-readiness-example
+    }
+}
+
+// start-primary-warmer
+// Opens connections to each new primary as soon as the driver discovers it,
+// and publishes whether the deployment can accept writes
+class PrimaryWarmer implements ClusterListener {
+    private final int warmConnections;
+    private final Sinks.Many<Optional<ServerAddress>> primary = Sinks.many().replay().latest();
+    private volatile MongoClient mongoClient;
+    private ServerAddress currentPrimary;
+    private Disposable warmUp;
+
+    private final LongAdder warmUps = new LongAdder();
+    private final LongAdder succeededPings = new LongAdder();
+    private final LongAdder failedPings = new LongAdder();
+    private volatile long lastWarmUpNanos;
+
+    PrimaryWarmer(int warmConnections) {
+        this.warmConnections = warmConnections;
+        primary.tryEmitNext(Optional.empty());
+    }
+
+    // Call after you create the client that this listener is registered with
+    void attach(MongoClient mongoClient) {
+        this.mongoClient = mongoClient;
+        synchronized (this) {
+            if (currentPrimary != null) {
+                warmUp();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void clusterDescriptionChanged(ClusterDescriptionChangedEvent event) {
+        ServerAddress newPrimary = event.getNewDescription().getServerDescriptions().stream()
+                .filter(ServerDescription::isPrimary)
+                .map(ServerDescription::getAddress)
+                .findFirst()
+                .orElse(null);
+        if (newPrimary == null ? currentPrimary == null : newPrimary.equals(currentPrimary)) {
+            return;
+        }
+        currentPrimary = newPrimary;
+        if (newPrimary != null) {
+            warmUp();
+        }
+        primary.tryEmitNext(Optional.ofNullable(newPrimary));
+    }
+
+    // Emits true when a primary is available and false when none is
+    Flux<Boolean> writable() {
+        return primary.asFlux().map(Optional::isPresent).distinctUntilChanged();
+    }
+
+    // Waits for a primary, then runs the write
+    <T> Mono<T> whenWritable(Duration timeout, Supplier<Publisher<T>> write) {
+        return primary.asFlux()
+                .filter(Optional::isPresent)
+                .next()
+                .timeout(timeout)
+                .then(Mono.defer(() -> Mono.from(write.get())));
+    }
+
+    // Runs concurrent ping commands on the primary so that the pool opens a connection,
+    // including the TLS and authentication handshakes, for each of them
+    private void warmUp() {
+        MongoClient client = mongoClient;
+        if (client == null || warmConnections <= 0) {
+            return;
+        }
+        if (warmUp != null) {
+            warmUp.dispose();
+        }
+        long start = System.nanoTime();
+        warmUp = Flux.range(0, warmConnections)
+                .flatMap(i -> Mono.from(client.getDatabase("admin")
+                                .withReadPreference(ReadPreference.primary())
+                                .runCommand(new Document("ping", 1)))
+                        .doOnNext(reply -> succeededPings.increment())
+                        .onErrorResume(e -> {
+                            failedPings.increment();
+                            return Mono.empty();
+                        }), warmConnections)
+                .then()
+                .subscribe(null, null, () -> {
+                    warmUps.increment();
+                    lastWarmUpNanos = System.nanoTime() - start;
+                });
+    }
+
+    @Override
+    public String toString() {
+        return String.format("warmUps=%d succeededPings=%d failedPings=%d lastWarmUpMs=%d",
+                warmUps.sum(), succeededPings.sum(), failedPings.sum(),
+                TimeUnit.NANOSECONDS.toMillis(lastWarmUpNanos));
+    }
+}
+// end-primary-warmer
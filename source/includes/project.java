@@ -7,22 +7,36 @@ import com.mongodb.reactivestreams.client.FindPublisher;
 import com.mongodb.reactivestreams.client.MongoClient;
 import com.mongodb.reactivestreams.client.MongoCollection;
 import com.mongodb.reactivestreams.client.MongoDatabase;
+import com.mongodb.reactivestreams.client.AggregatePublisher;
+import com.mongodb.client.model.Aggregates;
 import org.bson.BsonDocument;
 
 import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.bson.conversions.Bson;
 import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
 
+import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static com.mongodb.client.model.Projections.*;
 
 class QueryDatabase {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         // Replace the placeholder with your Atlas connection string
         String uri = "<connection string>";
 
@@ -74,6 +88,49 @@ class QueryDatabase {
                 .blockLast();
         //  end-project-exclude
 
+        //  start-project-raw
+        FindPublisher<RawBsonDocument> findRawPublisher = restaurants.find(
+                        and(eq("borough", "Queens"), eq("cuisine", "Irish")), RawBsonDocument.class)
+                .projection(fields(include("name", "cuisine", "borough")));
+
+        try (FileChannel channel = FileChannel.open(Paths.get("queens.bson"), CREATE, WRITE, TRUNCATE_EXISTING)) {
+            Flux.from(findRawPublisher)
+                    // Writes to the file on a thread that can block, instead of a driver thread
+                    .publishOn(Schedulers.boundedElastic())
+                    .doOnNext(document -> writeBson(document, channel))
+                    .blockLast();
+        }
+        //  end-project-raw
+
+        //  start-aggregate-raw
+        AggregatePublisher<RawBsonDocument> aggregateRawPublisher = restaurants.aggregate(
+                Arrays.asList(
+                        Aggregates.match(eq("borough", "Queens")),
+                        Aggregates.project(fields(include("name", "cuisine")))),
+                RawBsonDocument.class);
+
+        try (FileChannel channel = FileChannel.open(Paths.get("queens-aggregate.bson"), CREATE, WRITE, TRUNCATE_EXISTING)) {
+            Flux.from(aggregateRawPublisher)
+                    .publishOn(Schedulers.boundedElastic())
+                    .doOnNext(document -> writeBson(document, channel))
+                    .blockLast();
+        }
+        //  end-aggregate-raw
+
+        }
+    }
+
+    //  start-write-raw-bson
+    private static void writeBson(RawBsonDocument document, WritableByteChannel channel) {
+        // Writes the bytes the driver received, without encoding the document again
+        ByteBuffer buffer = document.getByteBuffer().asNIO();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
+    //  end-write-raw-bson
 }
\ No newline at end of file
@@ -3,10 +3,22 @@ import com.mongodb.CursorType;
 import com.mongodb.MongoClientSettings;
 import com.mongodb.client.model.Filters;
 import com.mongodb.reactivestreams.client.*;
+import org.bson.BsonDocument;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BufferOverflowStrategy;
 import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Cursors {
     public static void main(String[] args) {
@@ -39,5 +51,212 @@ public class Cursors {
                     .doOnNext(System.out::println)
                     .blockLast();
             // end-tailable-cursor
+
+            // start-use-adaptive-cursor
+            MongoCollection<RawBsonDocument> rawCollection = collection.withDocumentClass(RawBsonDocument.class);
+
+            // Targets about 100 ms of work per batch and at most 16 MB of documents per batch
+            AdaptiveCursorPublisher cursor = new AdaptiveCursorPublisher(
+                    rawCollection.find(), 100, 16 * 1024 * 1024);
+
+            Flux.from(cursor)
+                    .doOnNext(x -> System.out.println(x.getString("name").getValue()))
+                    .blockLast();
+
+            System.out.printf("%.0f docs/s, last batch of %d documents%n",
+                    cursor.getDocumentsPerSecond(), cursor.getLastBatchSize());
+            // end-use-adaptive-cursor
+
+            // start-use-tailable-hub
+            TailableCursorHub hub = new TailableCursorHub(collection, 1024);
+
+            // Both subscribers share one server cursor
+            hub.subscribe(Filters.eq("level", "error"), TailableCursorHub.OverflowPolicy.LATEST)
+                    .subscribe(x -> System.out.println("Alert: " + x.toJson()));
+            hub.subscribe(Filters.eq("level", "error"), TailableCursorHub.OverflowPolicy.ERROR)
+                    .doOnNext(System.out::println)
+                    .blockLast();
+            // end-use-tailable-hub
         }
     }
+
+// start-adaptive-cursor-class
+// Sizes each getMore from the rate at which the subscriber consumes documents.
+// Don't call batchSize() on the FindPublisher, so that the driver uses the
+// requested demand as the size of each batch.
+class AdaptiveCursorPublisher implements Publisher<RawBsonDocument> {
+    private static final int MIN_BATCH_SIZE = 16;
+    private static final int MAX_BATCH_SIZE = 100_000;
+
+    private final FindPublisher<RawBsonDocument> findPublisher;
+    private final long targetBatchMillis;
+    private final long maxBatchBytes;
+
+    private volatile double documentsPerSecond;
+    private volatile double averageDocumentBytes = 1024;
+    private volatile long lastBatchSize;
+    private volatile long bytesBuffered;
+
+    AdaptiveCursorPublisher(FindPublisher<RawBsonDocument> findPublisher,
+                            long targetBatchMillis, long maxBatchBytes) {
+        this.findPublisher = findPublisher;
+        this.targetBatchMillis = targetBatchMillis;
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    public double getDocumentsPerSecond() {
+        return documentsPerSecond;
+    }
+
+    public long getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    // Estimated size of the documents requested from the server but not yet delivered
+    public long getBytesBuffered() {
+        return bytesBuffered;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super RawBsonDocument> downstream) {
+        findPublisher.subscribe(new AdaptiveSubscriber(downstream));
+    }
+
+    private long nextBatchSize(long downstreamDemand) {
+        long byRate = (long) (documentsPerSecond * targetBatchMillis / 1000);
+        long byBytes = (long) (maxBatchBytes / averageDocumentBytes);
+        long size = Math.max(MIN_BATCH_SIZE, Math.min(byRate, MAX_BATCH_SIZE));
+        return Math.max(1, Math.min(Math.min(size, byBytes), downstreamDemand));
+    }
+
+    private class AdaptiveSubscriber implements Subscriber<RawBsonDocument>, Subscription {
+        private final Subscriber<? super RawBsonDocument> downstream;
+        private Subscription upstream;
+        private long downstreamDemand;
+        private long upstreamOutstanding;
+        private long batchStartNanos;
+
+        AdaptiveSubscriber(Subscriber<? super RawBsonDocument> downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+            downstream.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(RawBsonDocument document) {
+            downstream.onNext(document);
+            // onNext() returns after the subscriber has handled the document
+            long batchSize;
+            synchronized (this) {
+                averageDocumentBytes = averageDocumentBytes * 0.99
+                        + document.getByteBuffer().remaining() * 0.01;
+                upstreamOutstanding--;
+                bytesBuffered = (long) (upstreamOutstanding * averageDocumentBytes);
+                if (upstreamOutstanding > 0) {
+                    return;
+                }
+                long elapsedNanos = Math.max(1, System.nanoTime() - batchStartNanos);
+                documentsPerSecond = lastBatchSize * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+                batchSize = requestBatch();
+            }
+            if (batchSize > 0) {
+                upstream.request(batchSize);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            long batchSize;
+            synchronized (this) {
+                downstreamDemand = n == Long.MAX_VALUE || downstreamDemand + n < 0
+                        ? Long.MAX_VALUE : downstreamDemand + n;
+                batchSize = upstreamOutstanding == 0 ? requestBatch() : 0;
+            }
+            if (batchSize > 0) {
+                upstream.request(batchSize);
+            }
+        }
+
+        // Must be called while holding the lock
+        private long requestBatch() {
+            if (downstreamDemand == 0) {
+                return 0;
+            }
+            long batchSize = nextBatchSize(downstreamDemand);
+            if (downstreamDemand != Long.MAX_VALUE) {
+                downstreamDemand -= batchSize;
+            }
+            upstreamOutstanding = batchSize;
+            lastBatchSize = batchSize;
+            bytesBuffered = (long) (batchSize * averageDocumentBytes);
+            batchStartNanos = System.nanoTime();
+            return batchSize;
+        }
+
+        @Override
+        public void cancel() {
+            upstream.cancel();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            downstream.onError(t);
+        }
+
+        @Override
+        public void onComplete() {
+            downstream.onComplete();
+        }
+    }
+}
+// end-adaptive-cursor-class
+
+// start-tailable-hub-class
+class TailableCursorHub {
+    enum OverflowPolicy { DROP, LATEST, ERROR }
+
+    private final MongoCollection<Document> collection;
+    private final int bufferSize;
+    private final ConcurrentHashMap<BsonDocument, Flux<Document>> feeds = new ConcurrentHashMap<>();
+
+    TailableCursorHub(MongoCollection<Document> collection, int bufferSize) {
+        this.collection = collection;
+        this.bufferSize = bufferSize;
+    }
+
+    public Flux<Document> subscribe(Bson filter, OverflowPolicy policy) {
+        Flux<Document> feed = feeds.computeIfAbsent(filter.toBsonDocument(), this::openFeed);
+        switch (policy) {
+            case DROP:
+                return feed.onBackpressureDrop();
+            case LATEST:
+                return feed.onBackpressureLatest();
+            default:
+                return feed.onBackpressureBuffer(bufferSize, BufferOverflowStrategy.ERROR);
+        }
+    }
+
+    private Flux<Document> openFeed(BsonDocument filter) {
+        AtomicReference<Object> lastSeenId = new AtomicReference<>();
+        return Flux.defer(() -> {
+                    Object lastId = lastSeenId.get();
+                    Bson query = lastId == null ? filter : Filters.and(filter, Filters.gt("_id", lastId));
+                    return collection.find(query).cursorType(CursorType.TailableAwait);
+                })
+                .doOnNext(document -> lastSeenId.set(document.get("_id")))
+                // The server closes a tailable cursor that has no results, so open a new one
+                .repeatWhen(completed -> completed.delayElements(Duration.ofMillis(100)))
+                // Reopens the cursor after the last seen _id when an error occurs
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofMillis(100))
+                        .maxBackoff(Duration.ofSeconds(5)))
+                // Shares one cursor and a bounded buffer between all subscribers, and closes
+                // the cursor when the last subscriber cancels
+                .publish(bufferSize)
+                .refCount();
+    }
+}
+// end-tailable-hub-class
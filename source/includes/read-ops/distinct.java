@@ -1,10 +1,25 @@
 import com.mongodb.ConnectionString;
 import com.mongodb.MongoClientSettings;
+import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UnwindOptions;
 import com.mongodb.reactivestreams.client.*;
+import org.bson.BsonValue;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.bson.conversions.Bson;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 public class Distinct {
     public static void main(String[] args) {
@@ -55,6 +70,179 @@ public class Distinct {
                     .doOnNext(System.out::println)
                     .blockLast();
             // end-distinct-comment
+
+            // start-use-parallel-distinct
+            ParallelDistinct parallelDistinct = new ParallelDistinct(collection, 16, 8);
+            Bson filter = Filters.eq("cuisine", "Pizza");
+
+            // Returns every distinct value
+            Flux.from(parallelDistinct.distinct("name", filter))
+                    .doOnNext(System.out::println)
+                    .blockLast();
+
+            // Estimates the number of distinct values without keeping them in memory
+            Long estimate = parallelDistinct.estimateCount("name", filter).block();
+            System.out.println("About " + estimate + " distinct names");
+            // end-use-parallel-distinct
+        }
+    }
+}
+
+// start-parallel-distinct-class
+class ParallelDistinct {
+    private static final int SAMPLE_SIZE = 1000;
+
+    private final MongoCollection<RawBsonDocument> collection;
+    private final int ranges;
+    private final int parallelism;
+
+    ParallelDistinct(MongoCollection<Document> collection, int ranges, int parallelism) {
+        this.collection = collection.withDocumentClass(RawBsonDocument.class);
+        this.ranges = ranges;
+        this.parallelism = parallelism;
+    }
+
+    // Returns each distinct value of the field once, in no particular order
+    public Flux<BsonValue> distinct(String field, Bson filter) {
+        return rangeResults(field, filter)
+                .map(group -> group.get("_id"))
+                // The ranges don't overlap, so this removes only values that a concurrent
+                // update moves from one range to another while the aggregations run
+                .distinct();
+    }
+
+    // Estimates the number of distinct values by using a HyperLogLog sketch
+    public Mono<Long> estimateCount(String field, Bson filter) {
+        return rangeResults(field, filter)
+                .reduce(new HyperLogLog(14), (sketch, group) -> sketch.add(group.getByteBuffer().asNIO()))
+                .map(HyperLogLog::estimate);
+    }
+
+    // Runs a $group query for each range of field values at the same time
+    private Flux<RawBsonDocument> rangeResults(String field, Bson filter) {
+        return splitPoints(field).flatMapMany(bounds -> {
+            List<AggregatePublisher<RawBsonDocument>> aggregations = new ArrayList<>();
+            if (bounds.isEmpty()) {
+                aggregations.add(groupValues(field, filter, Filters.exists(field), Filters.exists(field)));
+            } else {
+                for (int i = 0; i <= bounds.size(); i++) {
+                    List<Bson> range = new ArrayList<>();
+                    if (i > 0) {
+                        range.add(Filters.gte(field, bounds.get(i - 1)));
+                    }
+                    if (i < bounds.size()) {
+                        range.add(Filters.lt(field, bounds.get(i)));
+                    }
+                    // A document matches a range if any of its array elements is in the range,
+                    // so keeps only the elements that are in this range after the $unwind stage
+                    aggregations.add(groupValues(field, filter, Filters.and(range), Filters.and(range)));
+                }
+                // The ranges match only values of the bounds' type, so one more aggregation
+                // returns the values of all other types, including null
+                Bson otherTypes = new Document(field, new Document("$exists", true)
+                        .append("$not", new Document("$type", typeAlias(bounds.get(0)))));
+                aggregations.add(groupValues(field, filter, Filters.exists(field), otherTypes));
+            }
+            return Flux.fromIterable(aggregations).flatMap(aggregation -> aggregation, parallelism);
+        });
+    }
+
+    private AggregatePublisher<RawBsonDocument> groupValues(String field, Bson filter,
+                                                            Bson documentCondition, Bson elementCondition) {
+        return collection.aggregate(Arrays.asList(
+                        Aggregates.match(Filters.and(filter, documentCondition)),
+                        // Groups each array element separately and keeps null values, as the
+                        // distinct command does
+                        Aggregates.unwind("$" + field, new UnwindOptions().preserveNullAndEmptyArrays(true)),
+                        Aggregates.match(elementCondition),
+                        Aggregates.group("$" + field)))
+                .allowDiskUse(true);
+    }
+
+    // Chooses range bounds from a random sample of the values of the field's most common type
+    private Mono<List<BsonValue>> splitPoints(String field) {
+        return Flux.from(collection.aggregate(Arrays.asList(
+                        Aggregates.sample(SAMPLE_SIZE),
+                        Aggregates.match(Filters.exists(field)),
+                        Aggregates.unwind("$" + field),
+                        Aggregates.project(Projections.fields(Projections.include(field), Projections.excludeId())),
+                        Aggregates.sort(Sorts.ascending(field)))))
+                .map(document -> document.get(field))
+                .collectList()
+                .map(values -> {
+                    List<BsonValue> bounds = new ArrayList<>();
+                    if (values.isEmpty()) {
+                        return bounds;
+                    }
+                    Map<Object, Long> typeCounts = values.stream()
+                            .collect(Collectors.groupingBy(ParallelDistinct::typeAlias, Collectors.counting()));
+                    Object commonType = Collections.max(typeCounts.entrySet(), Map.Entry.comparingByValue()).getKey();
+                    List<BsonValue> sample = values.stream()
+                            .filter(value -> typeAlias(value).equals(commonType))
+                            .collect(Collectors.toList());
+                    for (int i = 1; i < ranges; i++) {
+                        BsonValue bound = sample.get(i * sample.size() / ranges);
+                        if (bounds.isEmpty() || !bounds.get(bounds.size() - 1).equals(bound)) {
+                            bounds.add(bound);
+                        }
+                    }
+                    return bounds;
+                });
+    }
+
+    // Returns the $type alias of a value. All numeric types compare with each other, so they
+    // share the "number" alias.
+    private static Object typeAlias(BsonValue value) {
+        return value.isNumber() || value.isDecimal128() ? "number" : value.getBsonType().getValue();
+    }
+}
+
+class HyperLogLog {
+    private final int precision;
+    private final byte[] registers;
+
+    HyperLogLog(int precision) {
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    HyperLogLog add(ByteBuffer bytes) {
+        long hash = hash(bytes);
+        int index = (int) (hash >>> (64 - precision));
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        registers[index] = (byte) Math.max(registers[index], rank);
+        return this;
+    }
+
+    long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = (0.7213 / (1 + 1.079 / m)) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // Uses linear counting for small cardinalities
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    // 64-bit FNV-1a hash of the BSON bytes, followed by a final mix step
+    private static long hash(ByteBuffer bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = bytes.position(); i < bytes.limit(); i++) {
+            hash ^= bytes.get(i);
+            hash *= 0x100000001b3L;
         }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
     }
-}
\ No newline at end of file
+}
+// end-parallel-distinct-class
\ No newline at end of file
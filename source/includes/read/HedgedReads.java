@@ -0,0 +1,245 @@
+package org.example;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ReadPreference;
+import com.mongodb.ServerAddress;
+import com.mongodb.TagSet;
+import com.mongodb.connection.ServerDescription;
+import com.mongodb.event.*;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import org.bson.Document;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.mongodb.client.model.Filters.eq;
+
+public class HedgedReads {
+
+    public static void main(String[] args) {
+        // start-hedged-reads-example
+        LatencyTracker tracker = new LatencyTracker();
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString("<your connection string>"))
+                .addCommandListener(tracker)
+                .applyToClusterSettings(builder -> builder.addClusterListener(tracker))
+                .build();
+
+        try (MongoClient mongoClient = MongoClients.create(settings)) {
+            MongoCollection<Document> collection = mongoClient
+                    .getDatabase("sample_restaurants")
+                    .getCollection("restaurants");
+
+            // Hedges reads that take longer than the first member's 95th percentile,
+            // for at most 5% of reads
+            HedgedReader<Document> reader = new HedgedReader<>(collection, tracker, 0.95, 0.05, Duration.ofMillis(50));
+
+            Flux.range(0, 10_000)
+                    .flatMap(i -> reader.read(c -> c.find(eq("restaurant_id", String.valueOf(40356018 + i % 100))).first()), 32)
+                    .blockLast();
+
+            System.out.println("Hedged reads: " + reader.getHedgeCount() + ", won by hedge: " + reader.getHedgeWinCount());
+            tracker.secondaries().forEach(server -> System.out.printf("%s p50=%dus p99=%dus%n",
+                    server.getAddress(), tracker.percentileMicros(server.getAddress(), 0.50),
+                    tracker.percentileMicros(server.getAddress(), 0.99)));
+        }
+        // end-hedged-reads-example
+    }
+}
+
+// start-latency-tracker
+// Records read latency for each server and tracks which secondaries you can
+// target individually because they have unique tag sets
+class LatencyTracker implements CommandListener, ClusterListener {
+    private static final Set<String> READ_COMMANDS = new HashSet<>(Arrays.asList("find", "aggregate", "count", "distinct"));
+
+    private final ConcurrentHashMap<ServerAddress, LatencyWindow> windows = new ConcurrentHashMap<>();
+    private volatile List<ServerDescription> secondaries = Collections.emptyList();
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        if (READ_COMMANDS.contains(event.getCommandName())) {
+            windows.computeIfAbsent(event.getConnectionDescription().getServerAddress(), k -> new LatencyWindow(1024))
+                    .add(event.getElapsedTime(TimeUnit.MICROSECONDS));
+        }
+    }
+
+    @Override
+    public void clusterDescriptionChanged(ClusterDescriptionChangedEvent event) {
+        List<ServerDescription> candidates = event.getNewDescription().getServerDescriptions().stream()
+                .filter(server -> server.isOk() && server.isSecondary() && server.getTagSet().iterator().hasNext())
+                .collect(Collectors.toList());
+        Map<TagSet, Long> tagSetCounts = candidates.stream()
+                .collect(Collectors.groupingBy(ServerDescription::getTagSet, Collectors.counting()));
+        secondaries = candidates.stream()
+                .filter(server -> tagSetCounts.get(server.getTagSet()) == 1)
+                .collect(Collectors.toList());
+    }
+
+    // Returns the secondaries with unique tag sets, fastest first
+    List<ServerDescription> secondaries() {
+        List<ServerDescription> result = new ArrayList<>(secondaries);
+        result.sort(Comparator.comparingLong(server -> percentileMicros(server.getAddress(), 0.50)));
+        return result;
+    }
+
+    // Returns -1 if there are no samples for the server
+    long percentileMicros(ServerAddress address, double percentile) {
+        LatencyWindow window = windows.get(address);
+        return window == null ? -1 : window.percentile(percentile);
+    }
+
+    // Keeps the most recent samples and caches their sorted order for a short time
+    static final class LatencyWindow {
+        private final long[] samples;
+        private int next;
+        private int count;
+        private long[] sorted = new long[0];
+        private long sortedAt;
+
+        LatencyWindow(int size) {
+            this.samples = new long[size];
+        }
+
+        synchronized void add(long micros) {
+            samples[next] = micros;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        synchronized long percentile(double percentile) {
+            if (count == 0) {
+                return -1;
+            }
+            long now = System.nanoTime();
+            if (now - sortedAt > TimeUnit.MILLISECONDS.toNanos(100) || sorted.length == 0) {
+                sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                sortedAt = now;
+            }
+            return sorted[Math.min(sorted.length - 1, (int) (percentile * sorted.length))];
+        }
+    }
+}
+// end-latency-tracker
+
+// start-hedged-reader
+// Sends each read to the faster of two randomly chosen secondaries and, if it doesn't
+// respond within that secondary's latency percentile, sends the same read to the other one
+class HedgedReader<D> {
+    private static final long TOKEN = 1000;
+    private static final long MAX_TOKENS = 10 * TOKEN;
+
+    private final MongoCollection<D> collection;
+    private final LatencyTracker tracker;
+    private final double hedgePercentile;
+    private final long tokensPerRead;
+    private final Duration defaultHedgeDelay;
+    private final AtomicLong hedgeTokens = new AtomicLong();
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeWinCount = new AtomicLong();
+
+    HedgedReader(MongoCollection<D> collection, LatencyTracker tracker,
+                 double hedgePercentile, double maxHedgeRatio, Duration defaultHedgeDelay) {
+        this.collection = collection;
+        this.tracker = tracker;
+        this.hedgePercentile = hedgePercentile;
+        this.tokensPerRead = Math.round(maxHedgeRatio * TOKEN);
+        this.defaultHedgeDelay = defaultHedgeDelay;
+    }
+
+    // The read must be safe to run twice, and must return a single result
+    <T> Mono<T> read(Function<MongoCollection<D>, Publisher<T>> operation) {
+        return Mono.defer(() -> {
+            hedgeTokens.accumulateAndGet(tokensPerRead, (tokens, added) -> Math.min(MAX_TOKENS, tokens + added));
+            List<ServerDescription> members = tracker.secondaries();
+            if (members.size() < 2) {
+                return Mono.from(operation.apply(collection.withReadPreference(ReadPreference.secondaryPreferred())));
+            }
+            // Choosing two secondaries at random spreads reads and hedges across all eligible
+            // secondaries, so that the fastest secondary doesn't receive every read
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int firstIndex = random.nextInt(members.size());
+            int secondIndex = (firstIndex + 1 + random.nextInt(members.size() - 1)) % members.size();
+            ServerDescription first = members.get(firstIndex);
+            ServerDescription second = members.get(secondIndex);
+            if (tracker.percentileMicros(second.getAddress(), 0.50) < tracker.percentileMicros(first.getAddress(), 0.50)) {
+                ServerDescription faster = second;
+                second = first;
+                first = faster;
+            }
+            long thresholdMicros = tracker.percentileMicros(first.getAddress(), hedgePercentile);
+            Duration hedgeDelay = thresholdMicros < 0 ? defaultHedgeDelay : Duration.ofNanos(thresholdMicros * 1000);
+
+            // Starts the hedge as soon as the first read fails, without waiting for the delay
+            Sinks.Empty<Void> firstFailed = Sinks.empty();
+            AtomicReference<Throwable> firstError = new AtomicReference<>();
+            Mono<Tuple2<T, Boolean>> firstRead = readFrom(first, operation)
+                    .doOnError(error -> {
+                        firstError.set(error);
+                        firstFailed.tryEmitEmpty();
+                    })
+                    .map(result -> Tuples.of(result, false));
+            ServerDescription hedgeTarget = second;
+            // Completes without a value if the hedge budget is used up, so only the first read can win
+            Mono<Tuple2<T, Boolean>> hedgedRead = Mono.firstWithSignal(Mono.delay(hedgeDelay).then(), firstFailed.asMono())
+                    .then(Mono.defer(() -> tryAcquireHedge() ? readFrom(hedgeTarget, operation) : Mono.<T>empty()))
+                    .map(result -> Tuples.of(result, true));
+
+            // Returns the first value and cancels the other read. An error from one read doesn't
+            // end the race, so the caller receives an error only if neither read returns a value.
+            return Mono.firstWithValue(firstRead, hedgedRead)
+                    .doOnNext(result -> {
+                        if (result.getT2()) {
+                            hedgeWinCount.incrementAndGet();
+                        }
+                    })
+                    .map(Tuple2::getT1)
+                    .onErrorMap(NoSuchElementException.class,
+                            error -> firstError.get() != null ? firstError.get() : error);
+        });
+    }
+
+    long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    long getHedgeWinCount() {
+        return hedgeWinCount.get();
+    }
+
+    // Selects only the secondary with this tag set, even if the replica set's primary has the same tags
+    private <T> Mono<T> readFrom(ServerDescription server, Function<MongoCollection<D>, Publisher<T>> operation) {
+        return Mono.from(operation.apply(collection.withReadPreference(ReadPreference.secondary(server.getTagSet()))));
+    }
+
+    private boolean tryAcquireHedge() {
+        while (true) {
+            long tokens = hedgeTokens.get();
+            if (tokens < TOKEN) {
+                return false;
+            }
+            if (hedgeTokens.compareAndSet(tokens, tokens - TOKEN)) {
+                hedgeCount.incrementAndGet();
+                return true;
+            }
+        }
+    }
+}
+// end-hedged-reader
@@ -0,0 +1,100 @@
+// start-approximate-counter-class
+class ApproximateCounter {
+    // 95% confidence
+    private static final double Z = 1.96;
+
+    private final MongoCollection<Document> collection;
+    private final int sampleSize;
+
+    ApproximateCounter(MongoCollection<Document> collection, int sampleSize) {
+        this.collection = collection;
+        this.sampleSize = sampleSize;
+    }
+
+    // Samples until the relative error is below targetError or the time budget runs out
+    public Mono<CountEstimate> count(Bson filter, double targetError, Duration timeBudget) {
+        long deadline = System.nanoTime() + timeBudget.toNanos();
+        return Mono.from(collection.estimatedDocumentCount())
+                .flatMap(total -> refine(filter, total, 0, 0, targetError, deadline));
+    }
+
+    private Mono<CountEstimate> refine(Bson filter, long total, long matched, long sampled,
+                                       double targetError, long deadline) {
+        return sampleMatches(filter).flatMap(roundMatched -> {
+            CountEstimate estimate = new CountEstimate(total, matched + roundMatched, sampled + sampleSize);
+            if (estimate.relativeError() <= targetError || System.nanoTime() >= deadline) {
+                return Mono.just(estimate);
+            }
+            return refine(filter, total, estimate.matched, estimate.sampled, targetError, deadline);
+        });
+    }
+
+    // Counts how many documents in a random sample match the filter
+    private Mono<Long> sampleMatches(Bson filter) {
+        return Mono.from(collection.aggregate(Arrays.asList(
+                                Aggregates.sample(sampleSize),
+                                Aggregates.match(filter),
+                                Aggregates.count("matched")))
+                        .first())
+                .map(result -> result.getInteger("matched").longValue())
+                .defaultIfEmpty(0L);
+    }
+
+    static class CountEstimate {
+        final long total;
+        final long matched;
+        final long sampled;
+
+        CountEstimate(long total, long matched, long sampled) {
+            this.total = total;
+            this.matched = matched;
+            this.sampled = sampled;
+        }
+
+        long estimate() {
+            return Math.round(total * (double) matched / sampled);
+        }
+
+        // Bounds of the Wilson score interval for the matching fraction, scaled to the collection
+        long lowerBound() {
+            return Math.round(total * Math.max(0, center() - halfWidth()));
+        }
+
+        long upperBound() {
+            return Math.round(total * Math.min(1, center() + halfWidth()));
+        }
+
+        double relativeError() {
+            return matched == 0 ? Double.POSITIVE_INFINITY : total * halfWidth() / estimate();
+        }
+
+        private double center() {
+            double p = (double) matched / sampled;
+            return (p + Z * Z / (2.0 * sampled)) / (1 + Z * Z / sampled);
+        }
+
+        private double halfWidth() {
+            double p = (double) matched / sampled;
+            double n = sampled;
+            return Z * Math.sqrt(p * (1 - p) / n + Z * Z / (4 * n * n)) / (1 + Z * Z / n);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("about %d (95%% interval %d to %d, %d documents sampled)",
+                    estimate(), lowerBound(), upperBound(), sampled);
+        }
+    }
+}
+// end-approximate-counter-class
+
+// start-use-approximate-counter
+ApproximateCounter counter = new ApproximateCounter(restaurants, 1000);
+
+// Stops at a 5% relative error or after 200 milliseconds
+ApproximateCounter.CountEstimate estimate = counter
+        .count(eq("cuisine", "Italian"), 0.05, Duration.ofMillis(200))
+        .block();
+
+System.out.println(estimate);
+// end-use-approximate-counter
@@ -33,4 +33,158 @@ ChangeStreamPublisher<Document> changeStreamPublisher = restaurants.watch(pipeli
 Flux.from(changeStreamPublisher)
         .doOnNext(change -> System.out.println("Received change: " + change))
         .blockLast();
-// end-change-stream-post-image
\ No newline at end of file
+// end-change-stream-post-image
+
+// start-resume-token-store
+// Stores the most recent checkpointed resume token in a local file
+class FileResumeTokenStore {
+    private final Path path;
+
+    FileResumeTokenStore(Path path) {
+        this.path = path;
+    }
+
+    BsonDocument load() throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        return BsonDocument.parse(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+    }
+
+    void save(BsonDocument resumeToken) throws IOException {
+        // Writes to a temporary file first so that a crash never leaves a partial token
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(temp, resumeToken.toJson().getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
+// end-resume-token-store
+
+// start-checkpointed-consumer
+class CheckpointedChangeStreamConsumer {
+    private final MongoCollection<Document> collection;
+    private final List<Bson> pipeline;
+    private final FileResumeTokenStore store;
+    private final int parallelism;
+    private final int checkpointEveryEvents;
+    private final Duration checkpointInterval;
+
+    // Resume tokens of received events that are not checkpointed yet, by arrival order
+    private final ConcurrentSkipListMap<Long, BsonDocument> tokens = new ConcurrentSkipListMap<>();
+    // Arrival order of events that the handler has not finished processing
+    private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+    private final AtomicLong sinceCheckpoint = new AtomicLong();
+
+    CheckpointedChangeStreamConsumer(MongoCollection<Document> collection, List<Bson> pipeline,
+                                     FileResumeTokenStore store, int parallelism,
+                                     int checkpointEveryEvents, Duration checkpointInterval) {
+        this.collection = collection;
+        this.pipeline = pipeline;
+        this.store = store;
+        this.parallelism = parallelism;
+        this.checkpointEveryEvents = checkpointEveryEvents;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    Mono<Void> consume(Function<ChangeStreamDocument<Document>, Mono<Void>> handler) {
+        return Mono.fromCallable(store::load)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMapMany(savedToken -> {
+                    ChangeStreamPublisher<Document> changes = collection.watch(pipeline)
+                            .fullDocument(FullDocument.UPDATE_LOOKUP);
+                    // startAfter() also resumes after an invalidate event, unlike resumeAfter()
+                    savedToken.ifPresent(changes::startAfter);
+
+                    // Checkpoints on a timer as well, so that a quiet stream still saves its progress.
+                    // A failed timed checkpoint is retried at the next tick.
+                    return Flux.using(
+                            () -> Flux.interval(checkpointInterval)
+                                    .onBackpressureDrop()
+                                    .concatMap(tick -> checkpoint().onErrorResume(error -> Mono.empty()))
+                                    .subscribe(),
+                            timer -> Flux.from(changes)
+                                    .index()
+                                    .doOnNext(indexed -> {
+                                        // Marks the event as in flight before its token becomes visible
+                                        inFlight.add(indexed.getT1());
+                                        tokens.put(indexed.getT1(), indexed.getT2().getResumeToken());
+                                    })
+                                    // Sends all changes to the same document to the same group, and
+                                    // events without a document key, such as drop events, to group 0
+                                    .groupBy(indexed -> indexed.getT2().getDocumentKey() == null
+                                            ? 0
+                                            : Math.floorMod(indexed.getT2().getDocumentKey().hashCode(), parallelism))
+                                    .flatMap(group -> group
+                                            .publishOn(Schedulers.parallel())
+                                            .concatMap(indexed -> handler.apply(indexed.getT2())
+                                                    .then(Mono.defer(() -> completed(indexed.getT1())))),
+                                            parallelism),
+                            Disposable::dispose);
+                })
+                .then(Mono.defer(this::checkpoint))
+                // Saves the progress made before an error, then reports the error
+                .onErrorResume(error -> checkpoint()
+                        .onErrorResume(saveError -> Mono.empty())
+                        .then(Mono.error(error)))
+                .doOnCancel(() -> checkpoint().subscribe(null, saveError -> { }));
+    }
+
+    private Mono<Void> completed(long index) {
+        inFlight.remove(index);
+        // Starts a checkpoint once the threshold is reached. The count keeps growing until a
+        // checkpoint saves a token and resets it.
+        if (sinceCheckpoint.incrementAndGet() >= checkpointEveryEvents) {
+            return checkpoint();
+        }
+        return Mono.empty();
+    }
+
+    // Saves the token on a thread that can block, so that file I/O doesn't hold up event handling
+    private Mono<Void> checkpoint() {
+        return Mono.fromRunnable(this::saveSafeToken)
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+
+    // Runs one save at a time, so that an older token never overwrites a newer one
+    private synchronized void saveSafeToken() {
+        // Reads the latest token before the in-flight events. An event is marked as in flight
+        // before its token is added, so every event up to this token that is still running
+        // appears in the in-flight set that is read next.
+        Map.Entry<Long, BsonDocument> latest = tokens.lastEntry();
+        if (latest == null) {
+            return;
+        }
+        // Saves the token of the latest event that every earlier event has finished before
+        Long oldestInFlight = inFlight.isEmpty() ? null : inFlight.first();
+        Map.Entry<Long, BsonDocument> safe = oldestInFlight == null || oldestInFlight > latest.getKey()
+                ? latest
+                : tokens.lowerEntry(oldestInFlight);
+        if (safe == null) {
+            return;
+        }
+        try {
+            store.save(safe.getValue());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to save resume token", e);
+        }
+        tokens.headMap(safe.getKey(), true).clear();
+        sinceCheckpoint.set(0);
+    }
+}
+// end-checkpointed-consumer
+
+// start-consume-with-checkpoints
+CheckpointedChangeStreamConsumer consumer = new CheckpointedChangeStreamConsumer(
+        restaurants,
+        Arrays.asList(Aggregates.match(Filters.eq("operationType", "update"))),
+        new FileResumeTokenStore(Paths.get("restaurants-resume-token.json")),
+        8,
+        1000,
+        Duration.ofSeconds(5));
+
+consumer.consume(change -> Mono.fromRunnable(() ->
+                System.out.println("Processed change to " + change.getDocumentKey())))
+        .block();
+// end-consume-with-checkpoints
@@ -0,0 +1,131 @@
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.reactivestreams.client.*;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class LookupCacheExample {
+    public static void main(String[] args) {
+        String uri = "<connection string URI>";
+
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(uri))
+                .build();
+
+        try (MongoClient mongoClient = MongoClients.create(settings)) {
+            MongoDatabase database = mongoClient.getDatabase("sample_restaurants");
+            MongoCollection<Document> collection = database.getCollection("restaurants");
+
+            // start-use-lookup-cache
+            // Caches up to 64 MB of documents, looked up by their "restaurant_id" value
+            LookupCache cache = new LookupCache(collection, "restaurant_id", 64 * 1024 * 1024);
+
+            RawBsonDocument restaurant = cache.find(new BsonString("40356018")).block();
+            System.out.println(restaurant.toJson());
+
+            CacheStats stats = cache.stats();
+            System.out.printf("hits=%d, misses=%d, evictions=%d%n",
+                    stats.hitCount(), stats.missCount(), stats.evictionCount());
+
+            cache.close();
+            // end-use-lookup-cache
+        }
+    }
+}
+
+// start-lookup-cache-class
+class LookupCache implements AutoCloseable {
+    private final MongoCollection<RawBsonDocument> collection;
+    private final String keyField;
+    private final AsyncCache<BsonValue, RawBsonDocument> cache;
+    // Maps the _id of each cached document to its cache key, to handle delete events
+    private final ConcurrentHashMap<BsonValue, BsonValue> keysById = new ConcurrentHashMap<>();
+    private final Disposable invalidator;
+
+    LookupCache(MongoCollection<Document> collection, String keyField, long maxBytes) {
+        this.collection = collection.withDocumentClass(RawBsonDocument.class);
+        this.keyField = keyField;
+        this.cache = Caffeine.newBuilder()
+                // Caffeine evicts entries by using the W-TinyLFU policy
+                .maximumWeight(maxBytes)
+                .weigher((BsonValue key, RawBsonDocument document) -> document.getByteBuffer().remaining())
+                .removalListener((BsonValue key, RawBsonDocument document, RemovalCause cause) -> {
+                    if (document != null) {
+                        keysById.remove(document.get("_id"), key);
+                    }
+                })
+                // Limits how long a change that arrives during a lookup can leave a stale entry
+                .expireAfterWrite(Duration.ofMinutes(10))
+                .recordStats()
+                .buildAsync();
+        this.invalidator = watchForChanges();
+    }
+
+    // Returns the document whose key field equals the key, or an empty Mono
+    public Mono<RawBsonDocument> find(BsonValue key) {
+        return Mono.fromFuture(() -> cache.get(key, (k, executor) ->
+                Mono.from(collection.find(Filters.eq(keyField, k)).first())
+                        .doOnNext(document -> keysById.put(document.get("_id"), k))
+                        .toFuture()));
+    }
+
+    public CacheStats stats() {
+        return cache.synchronous().stats();
+    }
+
+    @Override
+    public void close() {
+        invalidator.dispose();
+    }
+
+    private Disposable watchForChanges() {
+        ChangeStreamPublisher<RawBsonDocument> changes = collection
+                .watch(Collections.singletonList(Aggregates.match(Filters.in("operationType",
+                        Arrays.asList("insert", "update", "replace", "delete")))), RawBsonDocument.class)
+                .fullDocument(FullDocument.UPDATE_LOOKUP);
+
+        return Flux.from(changes)
+                .doOnNext(this::invalidate)
+                // Events might be missed while the stream reconnects, so clear the whole cache
+                .doOnError(error -> cache.synchronous().invalidateAll())
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofMillis(100))
+                        .maxBackoff(Duration.ofSeconds(10)))
+                .subscribe();
+    }
+
+    private void invalidate(ChangeStreamDocument<RawBsonDocument> change) {
+        BsonDocument documentKey = change.getDocumentKey();
+        if (documentKey != null) {
+            BsonValue cachedKey = keysById.remove(documentKey.get("_id"));
+            if (cachedKey != null) {
+                cache.synchronous().invalidate(cachedKey);
+            }
+        }
+        // An insert or update can give a document a key that is cached for another document
+        RawBsonDocument fullDocument = change.getFullDocument();
+        if (fullDocument != null && fullDocument.containsKey(keyField)) {
+            cache.synchronous().invalidate(fullDocument.get(keyField));
+        }
+    }
+}
+// end-lookup-cache-class
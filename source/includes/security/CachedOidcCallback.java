@@ -0,0 +1,230 @@
+package org.example;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCredential;
+import com.mongodb.MongoCredential.OidcCallback;
+import com.mongodb.MongoCredential.OidcCallbackContext;
+import com.mongodb.MongoCredential.OidcCallbackResult;
+import com.mongodb.ServerAddress;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import org.bson.Document;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CachedOidcCallback {
+
+    public static void main(String[] args) throws IOException {
+        // start-cached-oidc-callback-example
+        try (CachedOidcTokenProvider tokenProvider =
+                     new CachedOidcTokenProvider(Paths.get("access-token.dat"), Duration.ofMinutes(5))) {
+            MongoCredential credential = MongoCredential.createOidcCredential(null)
+                    .withMechanismProperty(MongoCredential.OIDC_CALLBACK_KEY, tokenProvider);
+
+            // Every client that uses this credential shares the cached token
+            MongoClient mongoClient = MongoClients.create(
+                    MongoClientSettings.builder()
+                            .applyToClusterSettings(builder ->
+                                    builder.hosts(Arrays.asList(new ServerAddress("<hostname>", 27017))))
+                            .credential(credential)
+                            .build());
+
+            // ... perform operations
+
+            mongoClient.close();
+            System.out.println("Token file reads: " + tokenProvider.getFileReadCount());
+        }
+        // end-cached-oidc-callback-example
+    }
+}
+
+// start-cached-oidc-token-provider
+// Caches the token from a file until shortly before it expires, and reads the
+// file again in the background when the token is about to expire or the file changes
+class CachedOidcTokenProvider implements OidcCallback, Closeable {
+    // Treats a token as expired this long before its exp claim, to allow for clock skew
+    private static final Duration EXPIRY_SKEW = Duration.ofSeconds(10);
+    // Waits at least this long between scheduled reads if the file still holds an expiring token
+    private static final long MIN_REFRESH_DELAY_MILLIS = 5000;
+    // Retries a failed read after this delay, and doubles the delay after each failure up to the maximum
+    private static final long MIN_RETRY_DELAY_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60_000;
+
+    private final Path tokenFile;
+    private final Duration refreshAhead;
+    private final ScheduledExecutorService scheduler;
+    private final WatchService watchService;
+    private final Thread watcher;
+    private final AtomicLong fileReadCount = new AtomicLong();
+    private volatile CachedToken current;
+    private CompletableFuture<CachedToken> inFlight;
+    private ScheduledFuture<?> scheduledRefresh;
+    private boolean readAgain;
+    private long retryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+
+    CachedOidcTokenProvider(Path tokenFile, Duration refreshAhead) throws IOException {
+        this.tokenFile = tokenFile.toAbsolutePath();
+        this.refreshAhead = refreshAhead;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "oidc-token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.tokenFile.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.watcher = new Thread(this::watchTokenFile, "oidc-token-watcher");
+        this.watcher.setDaemon(true);
+        this.watcher.start();
+        refresh();
+    }
+
+    @Override
+    public OidcCallbackResult onRequest(OidcCallbackContext context) {
+        CachedToken token = current;
+        if (token == null || !token.isValid()) {
+            token = awaitRefresh(context.getTimeout());
+        }
+        Duration expiresIn = Duration.between(Instant.now(), token.expiresAt);
+        return new OidcCallbackResult(token.accessToken, expiresIn.isNegative() ? Duration.ZERO : expiresIn);
+    }
+
+    long getFileReadCount() {
+        return fileReadCount.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        watcher.interrupt();
+        watchService.close();
+        scheduler.shutdownNow();
+    }
+
+    private CachedToken awaitRefresh(Duration timeout) {
+        try {
+            return timeout == null ? refresh().get() : refresh().get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an OIDC token", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Unable to read the OIDC token from " + tokenFile, e);
+        }
+    }
+
+    // Starts a file read unless one is already running, so concurrent callers share one read
+    private synchronized CompletableFuture<CachedToken> refresh() {
+        if (inFlight == null) {
+            CompletableFuture<CachedToken> read = CompletableFuture.supplyAsync(this::readToken, scheduler);
+            inFlight = read;
+            read.whenComplete((token, error) -> onRefreshed(read, token));
+        }
+        return inFlight;
+    }
+
+    // A read that is already running might have started before the change, so reads again after it
+    private synchronized void onFileChanged() {
+        if (inFlight != null) {
+            readAgain = true;
+        } else {
+            refresh();
+        }
+    }
+
+    private synchronized void onRefreshed(CompletableFuture<CachedToken> read, CachedToken token) {
+        if (inFlight == read) {
+            inFlight = null;
+        }
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        if (readAgain) {
+            readAgain = false;
+            refresh();
+        }
+        if (token == null) {
+            // Retries in the background, so that connections don't have to wait for the read.
+            // A read that already started after a file change replaces the retry.
+            if (inFlight == null) {
+                scheduleRefresh(retryDelayMillis);
+            }
+            retryDelayMillis = Math.min(MAX_RETRY_DELAY_MILLIS, retryDelayMillis * 2);
+            return;
+        }
+        retryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+        current = token;
+        scheduleRefresh(Math.max(MIN_REFRESH_DELAY_MILLIS,
+                Duration.between(Instant.now(), token.expiresAt.minus(refreshAhead)).toMillis()));
+    }
+
+    private void scheduleRefresh(long delayMillis) {
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+        scheduledRefresh = scheduler.schedule(this::refresh, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private CachedToken readToken() {
+        try {
+            fileReadCount.incrementAndGet();
+            String accessToken = new String(Files.readAllBytes(tokenFile), StandardCharsets.UTF_8).trim();
+            return new CachedToken(accessToken, expiresAt(accessToken));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Reads the exp claim, in seconds since the epoch, from the token's payload
+    private static Instant expiresAt(String accessToken) {
+        String[] parts = accessToken.split("\\.");
+        if (parts.length < 2) {
+            throw new IllegalArgumentException("The OIDC access token is not a JWT");
+        }
+        String payload = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8);
+        Number exp = Document.parse(payload).get("exp", Number.class);
+        if (exp == null) {
+            throw new IllegalArgumentException("The OIDC access token has no exp claim");
+        }
+        return Instant.ofEpochSecond(exp.longValue());
+    }
+
+    private void watchTokenFile() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                boolean changed = key.pollEvents().stream()
+                        .anyMatch(event -> tokenFile.getFileName().equals(event.context()));
+                key.reset();
+                if (changed) {
+                    onFileChanged();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // The provider was closed
+        }
+    }
+
+    private static final class CachedToken {
+        final String accessToken;
+        final Instant expiresAt;
+
+        CachedToken(String accessToken, Instant expiresAt) {
+            this.accessToken = accessToken;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isValid() {
+            return Instant.now().isBefore(expiresAt.minus(EXPIRY_SKEW));
+        }
+    }
+}
+// end-cached-oidc-token-provider
@@ -0,0 +1,243 @@
+package org.example;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCredential;
+import com.mongodb.ServerAddress;
+import com.mongodb.SubjectProvider;
+import com.mongodb.connection.ConnectionId;
+import com.mongodb.event.*;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import org.ietf.jgss.*;
+
+import javax.security.auth.Subject;
+import javax.security.auth.kerberos.KerberosTicket;
+import javax.security.auth.login.LoginContext;
+import javax.security.auth.login.LoginException;
+import java.io.Closeable;
+import java.security.PrivilegedExceptionAction;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+public class KerberosCredentialCache {
+
+    public static void main(String[] args) {
+        // start-use-renewing-subject-provider
+        RenewingSubjectProvider subjectProvider = RenewingSubjectProvider.shared(
+                "com.sun.security.jgss.krb5.initiate",
+                "mongodb",
+                Arrays.asList("<hostname1>", "<hostname2>", "<hostname3>"),
+                Duration.ofMinutes(30));
+        HandshakeMetrics handshakeMetrics = new HandshakeMetrics();
+
+        MongoCredential credential = MongoCredential.createGSSAPICredential("<username>")
+                .withMechanismProperty(MongoCredential.JAVA_SUBJECT_PROVIDER_KEY, subjectProvider);
+
+        MongoClient mongoClient = MongoClients.create(
+                MongoClientSettings.builder()
+                        .applyToClusterSettings(builder ->
+                                builder.hosts(Arrays.asList(new ServerAddress("<hostname1>", 27017))))
+                        .applyToConnectionPoolSettings(builder -> builder.addConnectionPoolListener(handshakeMetrics))
+                        .credential(credential)
+                        .build());
+
+        // ... perform operations
+
+        System.out.println(subjectProvider);
+        System.out.println(handshakeMetrics);
+        mongoClient.close();
+        // end-use-renewing-subject-provider
+    }
+}
+
+// start-renewing-subject-provider-class
+// Logs in once for each login context in the JVM, gets service tickets for each host
+// ahead of time, and logs in again in the background before the ticket-granting ticket expires
+class RenewingSubjectProvider implements SubjectProvider, Closeable {
+    private static final ConcurrentHashMap<String, RenewingSubjectProvider> SHARED = new ConcurrentHashMap<>();
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(30);
+
+    private final String loginContextName;
+    private final String serviceName;
+    private final List<String> hosts;
+    private final Duration renewAhead;
+    private final ScheduledExecutorService scheduler;
+    private volatile Subject subject;
+    private volatile Instant expiresAt = Instant.MIN;
+
+    private final LongAdder logins = new LongAdder();
+    private final LongAdder loginFailures = new LongAdder();
+    private final LongAdder loginNanos = new LongAdder();
+    private final LongAdder inlineLogins = new LongAdder();
+    private final LongAdder prefetchFailures = new LongAdder();
+
+    private RenewingSubjectProvider(String loginContextName, String serviceName, List<String> hosts, Duration renewAhead) {
+        this.loginContextName = loginContextName;
+        this.serviceName = serviceName;
+        this.hosts = hosts;
+        this.renewAhead = renewAhead;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kerberos-renewal-" + loginContextName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(this::renew);
+    }
+
+    // Returns the provider for the login context, creating it on first use. Throws an exception
+    // if the existing provider for the login context uses a different configuration.
+    static RenewingSubjectProvider shared(String loginContextName, String serviceName,
+                                          List<String> hosts, Duration renewAhead) {
+        List<String> hostsCopy = Collections.unmodifiableList(new ArrayList<>(hosts));
+        RenewingSubjectProvider provider = SHARED.computeIfAbsent(loginContextName,
+                name -> new RenewingSubjectProvider(name, serviceName, hostsCopy, renewAhead));
+        if (!provider.serviceName.equals(serviceName) || !provider.hosts.equals(hostsCopy)
+                || !provider.renewAhead.equals(renewAhead)) {
+            throw new IllegalArgumentException("The shared provider for login context " + loginContextName
+                    + " uses service " + provider.serviceName + ", hosts " + provider.hosts
+                    + " and renewAhead " + provider.renewAhead);
+        }
+        return provider;
+    }
+
+    @Override
+    public Subject getSubject() throws LoginException {
+        Subject current = subject;
+        if (current != null && Instant.now().isBefore(expiresAt)) {
+            return current;
+        }
+        // Logs in on the calling thread only if the background login hasn't succeeded
+        synchronized (this) {
+            if (subject == null || !Instant.now().isBefore(expiresAt)) {
+                inlineLogins.increment();
+                login();
+            }
+            return subject;
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        SHARED.remove(loginContextName, this);
+    }
+
+    private void renew() {
+        Duration delay;
+        try {
+            synchronized (this) {
+                login();
+            }
+            delay = Duration.between(Instant.now(), expiresAt.minus(renewAhead));
+            if (delay.compareTo(RETRY_DELAY) < 0) {
+                delay = RETRY_DELAY;
+            }
+        } catch (LoginException e) {
+            delay = RETRY_DELAY;
+        }
+        scheduler.schedule(this::renew, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // Replaces the subject instead of changing it, so handshakes in progress keep a consistent subject
+    private void login() throws LoginException {
+        long start = System.nanoTime();
+        try {
+            LoginContext loginContext = new LoginContext(loginContextName);
+            loginContext.login();
+            Subject newSubject = loginContext.getSubject();
+            prefetchServiceTickets(newSubject);
+            expiresAt = ticketGrantingTicketEnd(newSubject);
+            subject = newSubject;
+            logins.increment();
+        } catch (LoginException e) {
+            loginFailures.increment();
+            throw e;
+        } finally {
+            loginNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    // Starts a security context with each host, which stores a service ticket in the subject
+    private void prefetchServiceTickets(Subject newSubject) {
+        GSSManager manager = GSSManager.getInstance();
+        for (String host : hosts) {
+            try {
+                Oid krb5Mechanism = new Oid("1.2.840.113554.1.2.2");
+                GSSName serverName = manager.createName(serviceName + "@" + host, GSSName.NT_HOSTBASED_SERVICE);
+                Subject.doAs(newSubject, (PrivilegedExceptionAction<Void>) () -> {
+                    GSSContext context = manager.createContext(serverName, krb5Mechanism, null, GSSContext.DEFAULT_LIFETIME);
+                    try {
+                        context.initSecContext(new byte[0], 0, 0);
+                    } finally {
+                        context.dispose();
+                    }
+                    return null;
+                });
+            } catch (Exception e) {
+                prefetchFailures.increment();
+            }
+        }
+    }
+
+    private static Instant ticketGrantingTicketEnd(Subject subject) throws LoginException {
+        Set<KerberosTicket> tickets = subject.getPrivateCredentials(KerberosTicket.class);
+        return tickets.stream()
+                .filter(ticket -> ticket.getServer().getName().startsWith("krbtgt/"))
+                .map(KerberosTicket::getEndTime)
+                .map(Date::toInstant)
+                .findFirst()
+                .orElseThrow(() -> new LoginException("The login did not return a ticket-granting ticket"));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("logins=%d failures=%d avgLoginMs=%.1f inlineLogins=%d prefetchFailures=%d expiresAt=%s",
+                logins.sum(), loginFailures.sum(),
+                loginNanos.sum() / 1e6 / Math.max(1, logins.sum() + loginFailures.sum()),
+                inlineLogins.sum(), prefetchFailures.sum(), expiresAt);
+    }
+}
+// end-renewing-subject-provider-class
+
+// start-handshake-metrics
+// Counts connections that complete or fail their handshake, which includes authentication
+class HandshakeMetrics implements ConnectionPoolListener {
+    private final Set<ConnectionId> establishing = ConcurrentHashMap.newKeySet();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    @Override
+    public void connectionCreated(ConnectionCreatedEvent event) {
+        establishing.add(event.getConnectionId());
+    }
+
+    @Override
+    public void connectionReady(ConnectionReadyEvent event) {
+        establishing.remove(event.getConnectionId());
+        succeeded.increment();
+        totalNanos.add(event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void connectionClosed(ConnectionClosedEvent event) {
+        if (establishing.remove(event.getConnectionId())) {
+            failed.increment();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("handshakes succeeded=%d failed=%d avgMs=%.1f",
+                succeeded.sum(), failed.sum(), totalNanos.sum() / 1e6 / Math.max(1, succeeded.sum()));
+    }
+}
+// end-handshake-metrics
@@ -11,17 +11,23 @@ import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.model.DeleteOneModel;
 import com.mongodb.client.model.DeleteManyModel;
 import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.reactivestreams.client.MongoCollection;
 
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.types.ObjectId;
 
 import com.mongodb.reactivestreams.client.MongoClient;
 import com.mongodb.reactivestreams.client.MongoClients;
 import com.mongodb.reactivestreams.client.MongoDatabase;
 import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.Arrays;
+import java.util.Collections;
 
 import static com.mongodb.client.model.Filters.eq;
 import static com.mongodb.client.model.Updates.set;
@@ -123,7 +129,108 @@ class BulkWrite {
             System.out.println(bulkResult.toString());
             // end-bulk-write-unordered
 
+            // start-bulk-write-streaming
+            Flux<WriteModel<Document>> models = Flux.range(0, 1_000_000)
+                    .map(i -> new InsertOneModel<>(new Document("name", "Restaurant " + i)
+                            .append("restaurant_id", String.valueOf(i))));
+
+            StreamingBulkWriter writer = new StreamingBulkWriter(restaurants, 1000, 4 * 1024 * 1024, 4);
+
+            BulkWriteResult streamingResult = writer.write(models).block();
+
+            System.out.println(streamingResult.toString());
+            // end-bulk-write-streaming
+
+            }
+    }
+
+}
+
+// start-streaming-bulk-writer
+class StreamingBulkWriter {
+    private final MongoCollection<RawBsonDocument> collection;
+    private final Codec<Document> codec;
+    private final int maxBatchCount;
+    private final long maxBatchBytes;
+    private final int concurrency;
+
+    StreamingBulkWriter(MongoCollection<Document> collection, int maxBatchCount,
+                        long maxBatchBytes, int concurrency) {
+        this.collection = collection.withDocumentClass(RawBsonDocument.class);
+        this.codec = collection.getCodecRegistry().get(Document.class);
+        this.maxBatchCount = maxBatchCount;
+        this.maxBatchBytes = maxBatchBytes;
+        this.concurrency = concurrency;
+    }
+
+    public Mono<BulkWriteResult> write(Publisher<WriteModel<Document>> models) {
+        // Runs the operations in order only if one batch runs at a time
+        BulkWriteOptions options = new BulkWriteOptions().ordered(concurrency == 1);
+        return Flux.defer(() -> {
+                    // Tracks the size of the batch that is currently being filled
+                    long[] batch = new long[2];
+                    // Starts a new batch before a model that would exceed either limit, so a batch
+                    // is larger than maxBatchBytes only if it holds a single larger model
+                    return Flux.from(models).map(this::encode).bufferUntil(model -> {
+                        long size = size(model);
+                        boolean full = batch[0] > 0
+                                && (batch[0] + 1 > maxBatchCount || batch[1] + size > maxBatchBytes);
+                        if (full) {
+                            batch[0] = 0;
+                            batch[1] = 0;
+                        }
+                        batch[0]++;
+                        batch[1] += size;
+                        return full;
+                    }, true);
+                })
+                // Requests a new batch only when one of the in-flight writes completes
+                .flatMap(batch -> collection.bulkWrite(batch, options), concurrency, 1)
+                .reduce(BulkWriteResult.acknowledged(0, 0, 0, 0,
+                        Collections.emptyList(), Collections.emptyList()), StreamingBulkWriter::add);
+    }
+
+    private static BulkWriteResult add(BulkWriteResult total, BulkWriteResult batch) {
+        return BulkWriteResult.acknowledged(
+                total.getInsertedCount() + batch.getInsertedCount(),
+                total.getMatchedCount() + batch.getMatchedCount(),
+                total.getDeletedCount() + batch.getDeletedCount(),
+                total.getModifiedCount() + batch.getModifiedCount(),
+                Collections.emptyList(),
+                Collections.emptyList());
+    }
+
+    // Encodes each document once, so that the writer measures and sends the same bytes
+    private WriteModel<RawBsonDocument> encode(WriteModel<Document> model) {
+        if (model instanceof InsertOneModel) {
+            Document document = ((InsertOneModel<Document>) model).getDocument();
+            // The driver adds an _id only to documents that it encodes itself. Adds it to a copy,
+            // so the caller's document doesn't change.
+            if (!document.containsKey("_id")) {
+                Document withId = new Document("_id", new ObjectId());
+                withId.putAll(document);
+                document = withId;
             }
+            return new InsertOneModel<>(new RawBsonDocument(document, codec));
+        } else if (model instanceof ReplaceOneModel) {
+            ReplaceOneModel<Document> replace = (ReplaceOneModel<Document>) model;
+            return new ReplaceOneModel<>(replace.getFilter(),
+                    new RawBsonDocument(replace.getReplacement(), codec), replace.getReplaceOptions());
+        }
+        // The other models contain only filters and updates, which don't depend on the document class
+        @SuppressWarnings("unchecked")
+        WriteModel<RawBsonDocument> other = (WriteModel<RawBsonDocument>) (WriteModel<?>) model;
+        return other;
     }
 
-}
\ No newline at end of file
+    private static long size(WriteModel<RawBsonDocument> model) {
+        if (model instanceof InsertOneModel) {
+            return ((InsertOneModel<RawBsonDocument>) model).getDocument().getByteBuffer().remaining();
+        } else if (model instanceof ReplaceOneModel) {
+            return ((ReplaceOneModel<RawBsonDocument>) model).getReplacement().getByteBuffer().remaining();
+        }
+        // Filters and update documents are usually small, so use a fixed estimate
+        return 256;
+    }
+}
+// end-streaming-bulk-writer
\ No newline at end of file
@@ -6,7 +6,10 @@ import com.mongodb.client.model.bulk.*;
 import org.bson.Document;
 
 import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
 import com.mongodb.reactivestreams.client.MongoClient;
 import com.mongodb.reactivestreams.client.MongoClients;
@@ -125,6 +128,104 @@ public class QuickStart {
             Publisher<ClientBulkWriteResult> bulkWritePublisher = mongoClient
                     .bulkWrite(bulkOperations, options);
             // end-options
+
+            // start-sharded-executor
+            MongoNamespace ordersNamespace = new MongoNamespace("db", "orders");
+            MongoNamespace eventsNamespace = new MongoNamespace("db", "events");
+
+            Flux<Tuple2<MongoNamespace, ClientNamespacedWriteModel>> operations = Flux
+                    .range(0, 10_000)
+                    .map(i -> {
+                        MongoNamespace target = i % 2 == 0 ? ordersNamespace : eventsNamespace;
+                        return Tuples.of(target, ClientNamespacedWriteModel
+                                .insertOne(target, new Document("sequence", i)));
+                    });
+
+            // Writes to "orders" stay in order, "events" batches run four at a time
+            ShardedClientBulkWriter executor = new ShardedClientBulkWriter(
+                    mongoClient, 500, 4, Collections.singleton(ordersNamespace));
+
+            Map<MongoNamespace, BulkWriteCounts> summary = executor
+                    .execute(operations)
+                    .block();
+
+            summary.forEach((ns, counts) -> System.out.println(ns + ": " + counts));
+            // end-sharded-executor
+        }
+    }
+}
+
+// start-sharded-client-bulk-writer
+class ShardedClientBulkWriter {
+    private final MongoClient mongoClient;
+    private final int batchSize;
+    private final int maxConcurrencyPerNamespace;
+    private final Set<MongoNamespace> orderedNamespaces;
+
+    ShardedClientBulkWriter(MongoClient mongoClient, int batchSize,
+                            int maxConcurrencyPerNamespace,
+                            Set<MongoNamespace> orderedNamespaces) {
+        this.mongoClient = mongoClient;
+        this.batchSize = batchSize;
+        this.maxConcurrencyPerNamespace = maxConcurrencyPerNamespace;
+        this.orderedNamespaces = orderedNamespaces;
+    }
+
+    public Mono<Map<MongoNamespace, BulkWriteCounts>> execute(
+            Publisher<Tuple2<MongoNamespace, ClientNamespacedWriteModel>> operations) {
+        return Flux.from(operations)
+                .groupBy(Tuple2::getT1)
+                // Subscribes to every namespace group so that one slow namespace
+                // does not hold up the others
+                .flatMap(group -> writeNamespace(group.key(), group.map(Tuple2::getT2))
+                        .map(counts -> Tuples.of(group.key(), counts)), Integer.MAX_VALUE)
+                .collectMap(Tuple2::getT1, Tuple2::getT2);
+    }
+
+    private Mono<BulkWriteCounts> writeNamespace(MongoNamespace namespace,
+                                                 Flux<ClientNamespacedWriteModel> models) {
+        Flux<List<ClientNamespacedWriteModel>> batches = models.buffer(batchSize);
+        Flux<ClientBulkWriteResult> results;
+        if (orderedNamespaces.contains(namespace)) {
+            ClientBulkWriteOptions options = ClientBulkWriteOptions
+                    .clientBulkWriteOptions()
+                    .ordered(true);
+            // Runs one batch at a time to preserve the order of the operations
+            results = batches.concatMap(batch -> mongoClient.bulkWrite(batch, options));
+        } else {
+            ClientBulkWriteOptions options = ClientBulkWriteOptions
+                    .clientBulkWriteOptions()
+                    .ordered(false);
+            results = batches.flatMap(batch -> mongoClient.bulkWrite(batch, options),
+                    maxConcurrencyPerNamespace);
         }
+        return results.reduce(new BulkWriteCounts(), BulkWriteCounts::add);
+    }
+}
+
+class BulkWriteCounts {
+    private long insertedCount;
+    private long upsertedCount;
+    private long matchedCount;
+    private long modifiedCount;
+    private long deletedCount;
+
+    BulkWriteCounts add(ClientBulkWriteResult result) {
+        insertedCount += result.getInsertedCount();
+        upsertedCount += result.getUpsertedCount();
+        matchedCount += result.getMatchedCount();
+        modifiedCount += result.getModifiedCount();
+        deletedCount += result.getDeletedCount();
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkWriteCounts{insertedCount=" + insertedCount
+                + ", upsertedCount=" + upsertedCount
+                + ", matchedCount=" + matchedCount
+                + ", modifiedCount=" + modifiedCount
+                + ", deletedCount=" + deletedCount + "}";
     }
 }
+// end-sharded-client-bulk-writer
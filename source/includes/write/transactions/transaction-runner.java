@@ -0,0 +1,214 @@
+// start-transaction-runner-class
+class TransactionRunner {
+    private static final String TRANSIENT_TRANSACTION_ERROR = "TransientTransactionError";
+    private static final String UNKNOWN_COMMIT_RESULT = "UnknownTransactionCommitResult";
+    private static final int MAX_TIME_EXPIRED = 50;
+    private static final long MAX_BACKOFF_MILLIS = 500;
+
+    private final MongoClient mongoClient;
+    private final TransactionOptions transactionOptions;
+    private final int maxConcurrentPerKey;
+    private final int maxPooledSessions;
+    private final Duration retryBudget;
+    private final ConcurrentLinkedQueue<ClientSession> sessions = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<String, AsyncPermits> permits = new ConcurrentHashMap<>();
+
+    TransactionRunner(MongoClient mongoClient, TransactionOptions transactionOptions,
+                      int maxConcurrentPerKey, int maxPooledSessions) {
+        this.mongoClient = mongoClient;
+        this.transactionOptions = transactionOptions;
+        this.maxConcurrentPerKey = maxConcurrentPerKey;
+        this.maxPooledSessions = maxPooledSessions;
+        // Uses the client timeout as the budget for all attempts, if one is set
+        Long timeoutMillis = mongoClient.getTimeout(TimeUnit.MILLISECONDS);
+        this.retryBudget = timeoutMillis != null && timeoutMillis > 0
+                ? Duration.ofMillis(timeoutMillis)
+                : Duration.ofSeconds(120);
+    }
+
+    // Runs the body in a transaction. Transactions with the same contention key
+    // run at most maxConcurrentPerKey at a time.
+    public <T> Mono<T> run(String contentionKey, Function<ClientSession, Mono<T>> body) {
+        return Mono.defer(() -> {
+            AsyncPermits keyPermits = retainPermits(contentionKey);
+            long deadline = System.nanoTime() + retryBudget.toNanos();
+            return keyPermits.withPermit(Mono.usingWhen(
+                            acquireSession(),
+                            session -> attempt(session, body, deadline, 0),
+                            this::releaseSession,
+                            (session, error) -> releaseSession(session),
+                            this::releaseSession))
+                    .doFinally(signal -> releasePermits(contentionKey));
+        });
+    }
+
+    // Counts the runs that use each key's permits, so that unused keys are removed
+    private AsyncPermits retainPermits(String contentionKey) {
+        return permits.compute(contentionKey, (key, keyPermits) -> {
+            AsyncPermits result = keyPermits == null ? new AsyncPermits(maxConcurrentPerKey) : keyPermits;
+            result.users++;
+            return result;
+        });
+    }
+
+    private void releasePermits(String contentionKey) {
+        permits.computeIfPresent(contentionKey, (key, keyPermits) -> --keyPermits.users == 0 ? null : keyPermits);
+    }
+
+    private <T> Mono<T> attempt(ClientSession session, Function<ClientSession, Mono<T>> body,
+                                long deadline, int attempt) {
+        return Mono.defer(() -> {
+            session.startTransaction(transactionOptions);
+            // Commits even if the body completes without a value
+            return body.apply(session)
+                    .singleOptional()
+                    .flatMap(result -> commit(session, deadline, 0).then(Mono.justOrEmpty(result)))
+                    .onErrorResume(error -> {
+                        // Aborting after a failed commit throws an exception, which this ignores
+                        Mono<Void> abort = Mono.defer(() -> Mono.from(session.abortTransaction()))
+                                .onErrorResume(abortError -> Mono.empty());
+                        if (hasLabel(error, TRANSIENT_TRANSACTION_ERROR) && System.nanoTime() < deadline) {
+                            return abort.then(backoff(attempt))
+                                    .then(attempt(session, body, deadline, attempt + 1));
+                        }
+                        return abort.then(Mono.error(error));
+                    });
+        });
+    }
+
+    private Mono<Void> commit(ClientSession session, long deadline, int attempt) {
+        return Mono.from(session.commitTransaction())
+                .onErrorResume(error -> {
+                    if (hasLabel(error, UNKNOWN_COMMIT_RESULT)
+                            && !isMaxTimeExpired(error)
+                            && System.nanoTime() < deadline) {
+                        // The commit might have succeeded, so retry only the commit
+                        return backoff(attempt).then(commit(session, deadline, attempt + 1));
+                    }
+                    return Mono.error(error);
+                });
+    }
+
+    // Waits for a random time up to an exponentially increasing limit
+    private static Mono<Long> backoff(int attempt) {
+        long limit = Math.min(MAX_BACKOFF_MILLIS, 5L << Math.min(attempt, 10));
+        return Mono.delay(Duration.ofMillis(ThreadLocalRandom.current().nextLong(limit + 1)));
+    }
+
+    private static boolean hasLabel(Throwable error, String label) {
+        return error instanceof MongoException && ((MongoException) error).hasErrorLabel(label);
+    }
+
+    private static boolean isMaxTimeExpired(Throwable error) {
+        return error instanceof MongoException && ((MongoException) error).getCode() == MAX_TIME_EXPIRED;
+    }
+
+    private Mono<ClientSession> acquireSession() {
+        return Mono.defer(() -> {
+            ClientSession session = sessions.poll();
+            return session != null ? Mono.just(session) : Mono.from(mongoClient.startSession());
+        });
+    }
+
+    // Closes a session that still has a transaction, such as after a cancellation,
+    // which aborts the transaction. Pools the other sessions.
+    private Mono<Void> releaseSession(ClientSession session) {
+        return Mono.fromRunnable(() -> {
+            if (!session.hasActiveTransaction() && sessions.size() < maxPooledSessions) {
+                sessions.offer(session);
+            } else {
+                session.close();
+            }
+        });
+    }
+}
+
+// Limits concurrency without blocking a thread while waiting
+class AsyncPermits {
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private int available;
+    // Guarded by the map that holds this instance
+    int users;
+
+    AsyncPermits(int permits) {
+        this.available = permits;
+    }
+
+    // Runs the work after it gets a permit, and returns the permit when the work
+    // ends. A caller that cancels while waiting leaves the queue.
+    <T> Mono<T> withPermit(Mono<T> work) {
+        return Mono.defer(() -> {
+            AtomicBoolean granted = new AtomicBoolean();
+            return acquire(granted)
+                    .then(work)
+                    .doFinally(signal -> {
+                        if (granted.getAndSet(false)) {
+                            release();
+                        }
+                    });
+        });
+    }
+
+    private Mono<Void> acquire(AtomicBoolean granted) {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink, granted);
+            synchronized (this) {
+                if (available == 0) {
+                    waiters.add(waiter);
+                    sink.onCancel(() -> removeWaiter(waiter));
+                    return;
+                }
+                available--;
+                granted.set(true);
+            }
+            sink.success();
+        });
+    }
+
+    private synchronized void removeWaiter(Waiter waiter) {
+        waiters.remove(waiter);
+    }
+
+    private void release() {
+        Waiter next;
+        synchronized (this) {
+            next = waiters.poll();
+            if (next == null) {
+                available++;
+                return;
+            }
+            next.granted.set(true);
+        }
+        next.sink.success();
+    }
+
+    private static final class Waiter {
+        final MonoSink<Void> sink;
+        final AtomicBoolean granted;
+
+        Waiter(MonoSink<Void> sink, AtomicBoolean granted) {
+            this.sink = sink;
+            this.granted = granted;
+        }
+    }
+}
+// end-transaction-runner-class
+
+// start-run-transactions
+TransactionRunner runner = new TransactionRunner(
+        mongoClient,
+        TransactionOptions.builder().writeConcern(WriteConcern.MAJORITY).build(),
+        4,
+        64);
+
+// Moves stock from one restaurant to ten others. Every transaction updates the
+// same source document, so at most four run at a time.
+Flux.range(0, 1000)
+        .flatMap(i -> runner.run("restaurant:40356018", session ->
+                Mono.from(restaurants.updateOne(session, eq("restaurant_id", "40356018"), inc("stock", -1)))
+                        .then(Mono.from(restaurants.updateOne(session,
+                                eq("restaurant_id", String.valueOf(40356068 + i % 10)), inc("stock", 1))))), 64)
+        .count()
+        .doOnNext(count -> System.out.println("Committed " + count + " transactions"))
+        .block();
+// end-run-transactions